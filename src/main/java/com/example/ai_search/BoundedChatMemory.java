@@ -0,0 +1,435 @@
+package com.example.ai_search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Chat memory with a token budget per conversation and a global token cap.
+ * <p>
+ * When a conversation exceeds its budget, the oldest turns are folded into a rolling summary.
+ * Idle conversations and, under global pressure, the least recently used ones are dropped from the heap.
+ * If a log directory is configured, every message is appended to a per-conversation log file and
+ * evicted conversations are replayed from disk on their next access.
+ */
+@Slf4j
+public class BoundedChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    private static final int MIN_RECENT_MESSAGES = 2;
+    private static final String SUMMARY_PREFIX = "Summary of earlier conversation: ";
+
+    private final int conversationTokenBudget;
+    private final long globalTokenBudget;
+    private final Duration idleTimeout;
+    private final ConversationSummarizer summarizer;
+    private final Path logDirectory;
+    private final Clock clock;
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+    private final AtomicLong totalTokens = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+    public BoundedChatMemory(int conversationTokenBudget, long globalTokenBudget, Duration idleTimeout,
+                             ConversationSummarizer summarizer, Path logDirectory) {
+        this(conversationTokenBudget, globalTokenBudget, idleTimeout, summarizer, logDirectory, Clock.systemUTC());
+    }
+
+    BoundedChatMemory(int conversationTokenBudget, long globalTokenBudget, Duration idleTimeout,
+                      ConversationSummarizer summarizer, Path logDirectory, Clock clock) {
+        if (conversationTokenBudget <= 0 || globalTokenBudget < conversationTokenBudget) {
+            throw new IllegalArgumentException("Token budgets must be positive and the global budget must cover one conversation");
+        }
+        this.conversationTokenBudget = conversationTokenBudget;
+        this.globalTokenBudget = globalTokenBudget;
+        this.idleTimeout = idleTimeout;
+        this.summarizer = summarizer;
+        this.logDirectory = logDirectory;
+        this.clock = clock;
+
+        if (logDirectory != null) {
+            try {
+                Files.createDirectories(logDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create chat memory log directory " + logDirectory, e);
+            }
+        }
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeout.toSeconds() / 2);
+        this.sweeper.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        withConversation(conversationId, conversation -> {
+            for (Message message : messages) {
+                String type = typeOf(message);
+                if (type == null) {
+                    continue;
+                }
+                conversation.append(type, message.getContent());
+                appendToLog(conversation, type, message.getContent());
+            }
+            compact(conversation);
+            return null;
+        });
+        enforceGlobalBudget();
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        return withConversation(conversationId, conversation -> {
+            List<Message> result = new ArrayList<>();
+            if (conversation.summary != null) {
+                result.add(new SystemMessage(SUMMARY_PREFIX + conversation.summary));
+            }
+            conversation.entries.stream()
+                    .skip(Math.max(0, conversation.entries.size() - lastN))
+                    .map(Entry::toMessage)
+                    .forEach(result::add);
+            return result;
+        });
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation != null) {
+            unregister(conversation);
+        }
+        if (logDirectory != null) {
+            try {
+                Files.deleteIfExists(logFile(conversationId));
+            } catch (IOException e) {
+                log.warn("Could not delete chat memory log for conversation {}", conversationId, e);
+            }
+        }
+    }
+
+    public int getConversationCount() {
+        return conversations.size();
+    }
+
+    public long getTotalTokens() {
+        return totalTokens.get();
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    void evictIdle() {
+        long cutoff = clock.millis() - idleTimeout.toMillis();
+        conversations.values().stream()
+                .filter(conversation -> conversation.lastAccess < cutoff)
+                .toList()
+                .forEach(this::evict);
+    }
+
+    // A conversation is only removed from the map under its lock, so one still registered under the lock is the
+    // live one; one evicted between the lookup and the lock is looked up, and replayed if logged, again
+    private <T> T withConversation(String conversationId, Function<Conversation, T> action) {
+        while (true) {
+            Conversation conversation = conversation(conversationId);
+            synchronized (conversation) {
+                if (conversation.registered) {
+                    return action.apply(conversation);
+                }
+            }
+        }
+    }
+
+    private Conversation conversation(String conversationId) {
+        Conversation conversation = conversations.computeIfAbsent(conversationId, id -> {
+            Conversation loaded = load(id);
+            loaded.registered = true;
+            totalTokens.addAndGet(loaded.tokens);
+            return loaded;
+        });
+        conversation.lastAccess = clock.millis();
+        return conversation;
+    }
+
+    private void compact(Conversation conversation) {
+        if (conversation.tokens <= conversationTokenBudget || conversation.entries.size() <= MIN_RECENT_MESSAGES) {
+            return;
+        }
+
+        // Fold the oldest turns into the summary until the remaining turns fit in half of the budget,
+        // leaving the other half for the summary and for new turns.
+        int target = conversationTokenBudget / 2;
+        List<Message> folded = new ArrayList<>();
+        while (conversation.entries.size() > MIN_RECENT_MESSAGES && conversation.tokens - conversation.summaryTokens > target) {
+            Entry oldest = conversation.entries.removeFirst();
+            conversation.adjustTokens(-oldest.tokens);
+            folded.add(oldest.toMessage());
+        }
+
+        String summary = summarizer.summarize(conversation.summary, folded, conversationTokenBudget / 4);
+        conversation.replaceSummary(summary);
+        log.debug("Folded {} messages of conversation {} into summary", folded.size(), conversation.id);
+    }
+
+    private void enforceGlobalBudget() {
+        if (totalTokens.get() <= globalTokenBudget) {
+            return;
+        }
+        List<Conversation> leastRecentlyUsed = conversations.values().stream()
+                .sorted(Comparator.comparingLong(conversation -> conversation.lastAccess))
+                .toList();
+        for (Conversation conversation : leastRecentlyUsed) {
+            if (totalTokens.get() <= globalTokenBudget) {
+                break;
+            }
+            evict(conversation);
+        }
+    }
+
+    private void evict(Conversation conversation) {
+        if (unregister(conversation)) {
+            log.debug("Evicted conversation {} from memory", conversation.id);
+        }
+    }
+
+    private boolean unregister(Conversation conversation) {
+        synchronized (conversation) {
+            if (!conversations.remove(conversation.id, conversation)) {
+                return false;
+            }
+            conversation.registered = false;
+            totalTokens.addAndGet(-conversation.tokens);
+            return true;
+        }
+    }
+
+    private Conversation load(String conversationId) {
+        Conversation conversation = new Conversation(conversationId);
+        if (logDirectory == null) {
+            return conversation;
+        }
+
+        Path file = logFile(conversationId);
+        if (!Files.exists(file)) {
+            return conversation;
+        }
+
+        // Replay with compaction after every record so that heap use stays within the budget
+        // no matter how long the log is.
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines.forEach(line -> {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    return;
+                }
+                String type = line.substring(0, tab);
+                String content = new String(Base64.getDecoder().decode(line.substring(tab + 1)), StandardCharsets.UTF_8);
+                if (SUMMARY.equals(type)) {
+                    conversation.replaceSummary(content);
+                } else {
+                    conversation.append(type, content);
+                    compact(conversation);
+                }
+            });
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not replay chat memory log for conversation {}", conversationId, e);
+        }
+
+        rewriteLogIfOversized(conversation, file);
+        return conversation;
+    }
+
+    private void rewriteLogIfOversized(Conversation conversation, Path file) {
+        try {
+            // Tokens are estimated at four characters each; allow the log to grow to four times the budget.
+            if (Files.size(file) <= 16L * conversationTokenBudget) {
+                return;
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                if (conversation.summary != null) {
+                    writer.write(record(SUMMARY, conversation.summary));
+                }
+                for (Entry entry : conversation.entries) {
+                    writer.write(record(entry.type, entry.content));
+                }
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not compact chat memory log {}", file, e);
+        }
+    }
+
+    private void appendToLog(Conversation conversation, String type, String content) {
+        if (logDirectory == null) {
+            return;
+        }
+        try {
+            Files.writeString(logFile(conversation.id), record(type, content), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warn("Could not append to chat memory log for conversation {}", conversation.id, e);
+        }
+    }
+
+    private Path logFile(String conversationId) {
+        String fileName = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(conversationId.getBytes(StandardCharsets.UTF_8));
+        return logDirectory.resolve(fileName + ".log");
+    }
+
+    private static String record(String type, String content) {
+        return type + "\t" + Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8)) + "\n";
+    }
+
+    static int estimateTokens(String content) {
+        return content == null ? MESSAGE_OVERHEAD_TOKENS : MESSAGE_OVERHEAD_TOKENS + (content.length() + 3) / 4;
+    }
+
+    private static final String USER = "USER";
+    private static final String ASSISTANT = "ASSISTANT";
+    private static final String SYSTEM = "SYSTEM";
+    private static final String SUMMARY = "SUMMARY";
+
+    private static String typeOf(Message message) {
+        if (message instanceof UserMessage) {
+            return USER;
+        }
+        if (message instanceof AssistantMessage) {
+            return ASSISTANT;
+        }
+        if (message instanceof SystemMessage) {
+            return SYSTEM;
+        }
+        return null;
+    }
+
+    private record Entry(String type, String content, int tokens) {
+
+        Message toMessage() {
+            return switch (type) {
+                case USER -> new UserMessage(content);
+                case ASSISTANT -> new AssistantMessage(content);
+                default -> new SystemMessage(content);
+            };
+        }
+    }
+
+    private final class Conversation {
+        private final String id;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private String summary;
+        private int summaryTokens;
+        private int tokens;
+        private boolean registered;
+        private volatile long lastAccess;
+
+        private Conversation(String id) {
+            this.id = id;
+            this.lastAccess = clock.millis();
+        }
+
+        private void append(String type, String content) {
+            Entry entry = new Entry(type, content, estimateTokens(content));
+            entries.addLast(entry);
+            adjustTokens(entry.tokens);
+        }
+
+        private void replaceSummary(String newSummary) {
+            int newSummaryTokens = newSummary == null ? 0 : estimateTokens(newSummary);
+            adjustTokens(newSummaryTokens - summaryTokens);
+            summary = newSummary;
+            summaryTokens = newSummaryTokens;
+        }
+
+        private void adjustTokens(int delta) {
+            tokens += delta;
+            if (registered) {
+                totalTokens.addAndGet(delta);
+            }
+        }
+    }
+
+    /**
+     * Folds evicted turns into the running summary of a conversation.
+     */
+    @FunctionalInterface
+    public interface ConversationSummarizer {
+
+        String summarize(String previousSummary, List<Message> evicted, int maxTokens);
+
+        /**
+         * Keeps the first sentence of every evicted turn, dropping the oldest text once the summary is full.
+         * Costs no model call, which makes it the default.
+         */
+        static ConversationSummarizer extractive() {
+            return (previousSummary, evicted, maxTokens) -> {
+                String folded = evicted.stream()
+                        .map(message -> typeOf(message).toLowerCase() + ": " + firstSentence(message.getContent()))
+                        .collect(Collectors.joining(" | "));
+                String summary = previousSummary == null ? folded : previousSummary + " | " + folded;
+                int maxChars = maxTokens * 4;
+                return summary.length() <= maxChars ? summary : summary.substring(summary.length() - maxChars);
+            };
+        }
+
+        /**
+         * Asks the given model to rewrite the summary. Only runs when a conversation overflows its budget.
+         */
+        static ConversationSummarizer usingChatModel(ChatModel chatModel) {
+            return (previousSummary, evicted, maxTokens) -> {
+                String turns = evicted.stream()
+                        .map(message -> typeOf(message).toLowerCase() + ": " + message.getContent())
+                        .collect(Collectors.joining("\n"));
+                String prompt = """
+                        Update the running summary of a search conversation with the turns below.
+                        Keep names, user IDs, team and project names the user referred to.
+                        Answer with the summary only, in at most %d words.
+
+                        Current summary: %s
+
+                        Turns:
+                        %s
+                        """.formatted(maxTokens * 3 / 4, previousSummary == null ? "(none)" : previousSummary, turns);
+                return chatModel.call(prompt);
+            };
+        }
+
+        private static String firstSentence(String content) {
+            if (content == null) {
+                return "";
+            }
+            String trimmed = content.strip().replaceAll("\\s+", " ");
+            int end = trimmed.indexOf(". ");
+            return end < 0 ? trimmed : trimmed.substring(0, end + 1);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.ai_search;
+
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notices clients that went away while their search is still running.
+ * <p>
+ * The servlet container only finds out that a connection is closed when it writes to it, and a search writes nothing
+ * until its answer is ready. A search still running after {@code search.keep-alive.after} therefore commits its
+ * response as a 200 and writes a space every {@code search.keep-alive.interval}; once the client is gone such a write
+ * fails and the search is cancelled. Leading whitespace is valid JSON, so the answer follows as usual. What no longer
+ * fits into the headers is sent as trailers: the real status as {@code X-Search-Status} and the cursor of the next
+ * page as {@code X-Next-Cursor}; an error message then becomes a JSON object with an {@code error} field.
+ */
+@Slf4j
+@Component
+class ClientKeepAlive implements AutoCloseable {
+
+    static final String STATUS_TRAILER = "X-Search-Status";
+
+    private final Duration after;
+    private final Duration interval;
+    private final ScheduledExecutorService scheduler;
+
+    ClientKeepAlive(@Value("${search.keep-alive.after:10s}") Duration after,
+                    @Value("${search.keep-alive.interval:5s}") Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("search.keep-alive.interval must be positive");
+        }
+        this.after = after;
+        this.interval = interval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "search-keep-alive");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts watching the client of a pending search; {@code onDisconnect} runs once a keep-alive write fails.
+     * With {@code probe} false, or a non-positive {@code search.keep-alive.after}, nothing is ever written early.
+     * The result must be set through {@link Watch#complete} so that it never interleaves with a keep-alive write.
+     */
+    Watch watch(DeferredResult<ResponseEntity<?>> result, HttpServletResponse response, boolean probe, Runnable onDisconnect) {
+        Watch watch = new Watch(result, response, onDisconnect);
+        if (probe && !after.isNegative() && !after.isZero()) {
+            watch.pings = scheduler.scheduleWithFixedDelay(watch::ping, after.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return watch;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    static final class Watch {
+
+        private final DeferredResult<ResponseEntity<?>> result;
+        private final HttpServletResponse response;
+        private final Runnable onDisconnect;
+        private final Map<String, String> trailers = new ConcurrentHashMap<>();
+        private volatile ScheduledFuture<?> pings;
+        private boolean committed;
+
+        private Watch(DeferredResult<ResponseEntity<?>> result, HttpServletResponse response, Runnable onDisconnect) {
+            this.result = result;
+            this.response = response;
+            this.onDisconnect = onDisconnect;
+        }
+
+        /**
+         * Sets the result of the search, moving status and cursor into trailers when keep-alives already went out.
+         */
+        synchronized boolean complete(ResponseEntity<?> entity) {
+            stop();
+            if (committed) {
+                trailers.put(STATUS_TRAILER, String.valueOf(entity.getStatusCode().value()));
+                String cursor = entity.getHeaders().getFirst(SearchController.NEXT_CURSOR_HEADER);
+                if (cursor != null) {
+                    trailers.put(SearchController.NEXT_CURSOR_HEADER, cursor);
+                }
+                if (!entity.getStatusCode().is2xxSuccessful() && entity.getBody() instanceof String message) {
+                    entity = ResponseEntity.status(entity.getStatusCode()).body(Map.of("error", message));
+                }
+            }
+            return result.setResult(entity);
+        }
+
+        private synchronized void ping() {
+            if (result.isSetOrExpired()) {
+                stop();
+                return;
+            }
+            try {
+                if (!committed) {
+                    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                    try {
+                        response.setTrailerFields(() -> trailers);
+                        response.setHeader(HttpHeaders.TRAILER, STATUS_TRAILER + ", " + SearchController.NEXT_CURSOR_HEADER);
+                    } catch (IllegalStateException e) {
+                        // HTTP/1.0 has no trailers; the answer itself still arrives
+                        log.debug("Response trailers are not supported: {}", e.getMessage());
+                    }
+                    committed = true;
+                }
+                response.getOutputStream().write(' ');
+                response.flushBuffer();
+            } catch (IOException e) {
+                stop();
+                log.info("Client went away during the search: {}", e.toString());
+                onDisconnect.run();
+                // Releases the request right away; nothing more reaches the client
+                result.setResult(ResponseEntity.noContent().build());
+            }
+        }
+
+        private void stop() {
+            ScheduledFuture<?> scheduled = pings;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
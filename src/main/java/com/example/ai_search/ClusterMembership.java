@@ -0,0 +1,308 @@
+package com.example.ai_search;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cluster view of the search nodes and the orgId ownership derived from it.
+ * <p>
+ * Each node sends a heartbeat to every member it knows of; the answer lists the members the other node considers
+ * alive, so a node that joins through one seed is known to all nodes after a round or two. A node learned of from
+ * an incoming heartbeat or another node's list is only a candidate until a heartbeat from this node reaches it.
+ * A member is taken off the ring after consecutive failed heartbeats or forwards, or right away when it leaves on
+ * shutdown, and the {@link ConsistentHashRing} is rebuilt whenever the set of alive members changes. A leaving node
+ * stops answering heartbeats first, and a leave is only accepted once a heartbeat to that node fails, so nobody can
+ * take a healthy node off the ring by claiming it left.
+ * <p>
+ * Clustering is off unless {@code search.cluster.self} is set; every org is then owned by this node.
+ */
+@Slf4j
+@Component
+class ClusterMembership implements AutoCloseable {
+
+    static final String FORWARDED_HEADER = "X-Search-Forwarded";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Duration HEARTBEAT_TIMEOUT = Duration.ofSeconds(2);
+    // Members that were never reached, or stopped answering long ago, are forgotten after this many failed rounds
+    private static final int FORGET_AFTER_ROUNDS = 10;
+
+    private final String self;
+    private final Set<String> seeds;
+    private final int failureThreshold;
+    private final int virtualNodes;
+    private final SearchMetrics metrics;
+    private final HttpClient httpClient;
+    private final Map<String, Member> members = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeats;
+    private volatile ConsistentHashRing ring;
+    private volatile boolean leaving;
+
+    ClusterMembership(@Value("${search.cluster.self:}") String self,
+                      @Value("${search.cluster.seeds:}") List<String> seeds,
+                      @Value("${search.cluster.heartbeat-interval:2s}") Duration heartbeatInterval,
+                      @Value("${search.cluster.failure-threshold:3}") int failureThreshold,
+                      @Value("${search.cluster.virtual-nodes:128}") int virtualNodes,
+                      SearchMetrics metrics) {
+        this.self = normalize(self);
+        this.seeds = new HashSet<>();
+        this.failureThreshold = failureThreshold;
+        this.virtualNodes = virtualNodes;
+        this.metrics = metrics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(HEARTBEAT_TIMEOUT)
+                .build();
+
+        if (!enabled()) {
+            this.heartbeats = null;
+            this.ring = new ConsistentHashRing(List.of(), virtualNodes);
+            return;
+        }
+
+        members.put(this.self, new Member(this.self, true));
+        seeds.stream().map(ClusterMembership::normalize).filter(seed -> !seed.isEmpty() && !seed.equals(this.self))
+                .forEach(seed -> {
+                    this.seeds.add(seed);
+                    members.putIfAbsent(seed, new Member(seed, false));
+                });
+        rebuildRing();
+
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeats.scheduleWithFixedDelay(this::sendHeartbeats, 0, heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Cluster node {} joining through {}", this.self, this.seeds);
+    }
+
+    boolean enabled() {
+        return !self.isEmpty();
+    }
+
+    String self() {
+        return self;
+    }
+
+    /**
+     * The node owning the org, or this node when clustering is off or the org is unknown.
+     */
+    String ownerOf(Long orgId) {
+        if (!enabled() || orgId == null) {
+            return self;
+        }
+        String owner = ring.owner(orgId);
+        return owner == null ? self : owner;
+    }
+
+    boolean isSelf(String node) {
+        return self.equals(node);
+    }
+
+    /**
+     * Whether this node is shutting down; it then answers heartbeats with an error so its leave is believed.
+     */
+    boolean leaving() {
+        return leaving;
+    }
+
+    CompletableFuture<HttpResponse<String>> forward(String owner, String pathAndQuery, Duration timeout) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(owner + pathAndQuery))
+                .timeout(timeout)
+                .header(FORWARDED_HEADER, self)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Counts a forward that failed to reach the node like a failed heartbeat, so a dead owner leaves the ring
+     * without waiting for a round.
+     */
+    void reportFailure(String node) {
+        Member member = members.get(node);
+        if (member != null) {
+            recordFailure(member, "forward failed");
+        }
+    }
+
+    /**
+     * Handles a heartbeat from another node and answers with the members this node considers alive.
+     * An unknown sender is added as a candidate only: anyone can claim any URL, so it goes on the ring once this
+     * node's own heartbeat to it succeeds.
+     */
+    List<String> onHeartbeat(String from) {
+        String node = normalize(from);
+        if (enabled() && !node.isEmpty() && !isSelf(node) && members.putIfAbsent(node, new Member(node, false)) == null) {
+            log.info("Cluster member {} announced itself", node);
+        }
+        return aliveMembers();
+    }
+
+    /**
+     * Handles a node announcing that it leaves. Like heartbeats, anyone can claim any URL, so a leave naming this
+     * node is ignored and one naming another node only counts once that node no longer answers heartbeats.
+     */
+    void onLeave(String node) {
+        String url = normalize(node);
+        if (!enabled() || url.isEmpty() || isSelf(url)) {
+            log.warn("Ignoring leave for {}", url.isEmpty() ? "no node" : "this node");
+            return;
+        }
+        Member member = members.get(url);
+        if (member == null) {
+            return;
+        }
+        if (answersHeartbeat(url)) {
+            log.warn("Ignoring leave for cluster member {}, which still answers heartbeats", url);
+            return;
+        }
+        if (members.remove(url, member) && member.alive) {
+            log.info("Cluster member {} left", member.url);
+            rebuildRing();
+        }
+    }
+
+    Map<String, Object> view() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("self", self);
+        view.put("alive", ring.nodes());
+        view.put("suspected", members.values().stream().filter(member -> !member.alive).map(member -> member.url).sorted().toList());
+        return view;
+    }
+
+    @Override
+    public void close() {
+        if (!enabled()) {
+            return;
+        }
+        leaving = true;
+        heartbeats.shutdownNow();
+        // Tell the others right away instead of letting them time out on us
+        for (String node : aliveMembers()) {
+            if (!isSelf(node)) {
+                try {
+                    send(node, "/api/cluster/leave?node=" + URLEncoder.encode(self, StandardCharsets.UTF_8));
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Could not tell {} that {} is leaving: {}", node, self, e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Member member : List.copyOf(members.values())) {
+            if (isSelf(member.url)) {
+                continue;
+            }
+            try {
+                String body = send(member.url, "/api/cluster/heartbeat?from=" + URLEncoder.encode(self, StandardCharsets.UTF_8));
+                member.consecutiveFailures.set(0);
+                if (!member.alive) {
+                    member.alive = true;
+                    log.info("Cluster member {} is alive", member.url);
+                    rebuildRing();
+                }
+                // Learn about the members the other node knows of; they count once we reach them ourselves
+                for (String known : OBJECT_MAPPER.readValue(body, new TypeReference<List<String>>() {
+                })) {
+                    members.putIfAbsent(normalize(known), new Member(normalize(known), false));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                recordFailure(member, e.getMessage());
+            }
+        }
+    }
+
+    private boolean answersHeartbeat(String node) {
+        try {
+            send(node, "/api/cluster/heartbeat?from=" + URLEncoder.encode(self, StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Without an answer either way the member stays; heartbeats take it off if it is really gone
+            return true;
+        }
+    }
+
+    private String send(String node, String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(node + pathAndQuery))
+                .timeout(HEARTBEAT_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private void recordFailure(Member member, String reason) {
+        int failures = member.consecutiveFailures.incrementAndGet();
+        if (member.alive && failures >= failureThreshold) {
+            member.alive = false;
+            metrics.increment("cluster.members-ejected");
+            log.warn("Taking cluster member {} off the ring after {} consecutive failures: {}", member.url, failures, reason);
+            rebuildRing();
+        } else if (!member.alive && failures >= failureThreshold * FORGET_AFTER_ROUNDS && !seeds.contains(member.url)) {
+            members.remove(member.url, member);
+        }
+    }
+
+    private List<String> aliveMembers() {
+        return members.values().stream().filter(member -> member.alive).map(member -> member.url).sorted().toList();
+    }
+
+    private synchronized void rebuildRing() {
+        ConsistentHashRing rebuilt = new ConsistentHashRing(aliveMembers(), virtualNodes);
+        if (ring == null || !rebuilt.nodes().equals(ring.nodes())) {
+            ring = rebuilt;
+            metrics.increment("cluster.rebalances");
+            log.info("Cluster view changed, orgs are now spread over {}", rebuilt.nodes());
+        }
+    }
+
+    private static String normalize(String url) {
+        String node = url == null ? "" : url.strip();
+        return node.endsWith("/") ? node.substring(0, node.length() - 1) : node;
+    }
+
+    private static final class Member {
+        private final String url;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean alive;
+
+        private Member(String url, boolean alive) {
+            this.url = url;
+            this.alive = alive;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.ai_search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only view of a repository snapshot written by {@link ColumnarSnapshotWriter}.
+ * <p>
+ * Every column is memory-mapped on open and read in place, so opening costs a few system calls regardless of
+ * the number of records, and records are only materialized as they are read. Users are sorted by userId and
+ * mentions by the mentioning userId, so lookups by id are binary searches over the mapped columns.
+ *
+ * <pre>
+ * header:   int magic, int version, int counts[6] (strings, users, teams, projects, project members, mentions),
+ *           long users checksum, then (long offset, long length) per section
+ * sections: string offsets (long[strings + 1]), string bytes (UTF-8),
+ *           user id, name ref, email ref, team id, org id,
+ *           team id, team name ref,
+ *           project name ref, project member offsets (int[projects + 1]), project member ids,
+ *           mention user id, mentioned user id, mention epoch day
+ * </pre>
+ * All numbers are little-endian; string refs index the shared string dictionary. The users checksum is
+ * {@link ColumnarSnapshotWriter#usersChecksum}, so a derived index can tell whether it holds these users
+ * without reading them.
+ */
+public final class ColumnarSnapshot {
+
+    static final int MAGIC = 0x53414953; // "SAIS"
+    static final int VERSION = 2;
+    static final int COUNTS = 6;
+    static final int SECTIONS = 15;
+    static final int HEADER_BYTES = 8 + 4 * COUNTS + 8 + 16 * SECTIONS;
+
+    static final int STRING_OFFSETS = 0;
+    static final int STRING_DATA = 1;
+    static final int USER_ID = 2;
+    static final int USER_NAME = 3;
+    static final int USER_EMAIL = 4;
+    static final int USER_TEAM_ID = 5;
+    static final int USER_ORG_ID = 6;
+    static final int TEAM_ID = 7;
+    static final int TEAM_NAME = 8;
+    static final int PROJECT_NAME = 9;
+    static final int PROJECT_MEMBER_OFFSETS = 10;
+    static final int PROJECT_MEMBERS = 11;
+    static final int MENTION_USER_ID = 12;
+    static final int MENTIONED_USER_ID = 13;
+    static final int MENTION_DAY = 14;
+
+    private final int userCount;
+    private final int teamCount;
+    private final int projectCount;
+    private final int mentionCount;
+    private final long usersChecksum;
+
+    private final LongBuffer stringOffsets;
+    private final ByteBuffer stringData;
+    private final LongBuffer userIds;
+    private final IntBuffer userNames;
+    private final IntBuffer userEmails;
+    private final LongBuffer userTeamIds;
+    private final LongBuffer userOrgIds;
+    private final LongBuffer teamIds;
+    private final IntBuffer teamNames;
+    private final IntBuffer projectNames;
+    private final IntBuffer projectMemberOffsets;
+    private final LongBuffer projectMembers;
+    private final LongBuffer mentionUserIds;
+    private final LongBuffer mentionedUserIds;
+    private final LongBuffer mentionDays;
+
+    private ColumnarSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a repository snapshot");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        header.getInt(); // string count, implied by the string offsets section
+        this.userCount = header.getInt();
+        this.teamCount = header.getInt();
+        this.projectCount = header.getInt();
+        header.getInt(); // project member count, implied by the last project member offset
+        this.mentionCount = header.getInt();
+        this.usersChecksum = header.getLong();
+
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        for (int section = 0; section < SECTIONS; section++) {
+            long offset = header.getLong();
+            long length = header.getLong();
+            sections[section] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        this.stringOffsets = sections[STRING_OFFSETS].asLongBuffer();
+        this.stringData = sections[STRING_DATA];
+        this.userIds = sections[USER_ID].asLongBuffer();
+        this.userNames = sections[USER_NAME].asIntBuffer();
+        this.userEmails = sections[USER_EMAIL].asIntBuffer();
+        this.userTeamIds = sections[USER_TEAM_ID].asLongBuffer();
+        this.userOrgIds = sections[USER_ORG_ID].asLongBuffer();
+        this.teamIds = sections[TEAM_ID].asLongBuffer();
+        this.teamNames = sections[TEAM_NAME].asIntBuffer();
+        this.projectNames = sections[PROJECT_NAME].asIntBuffer();
+        this.projectMemberOffsets = sections[PROJECT_MEMBER_OFFSETS].asIntBuffer();
+        this.projectMembers = sections[PROJECT_MEMBERS].asLongBuffer();
+        this.mentionUserIds = sections[MENTION_USER_ID].asLongBuffer();
+        this.mentionedUserIds = sections[MENTIONED_USER_ID].asLongBuffer();
+        this.mentionDays = sections[MENTION_DAY].asLongBuffer();
+    }
+
+    public static ColumnarSnapshot open(Path path) throws IOException {
+        // Mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ColumnarSnapshot(channel);
+        }
+    }
+
+    public int userCount() {
+        return userCount;
+    }
+
+    public long usersChecksum() {
+        return usersChecksum;
+    }
+
+    /**
+     * All users in userId order, read from the mapped columns on access.
+     */
+    public List<User> users() {
+        return new RowView<>(userCount, this::user);
+    }
+
+    public User getUser(long userId) {
+        int row = lowerBound(userIds, userCount, userId);
+        return row < userCount && userIds.get(row) == userId ? user(row) : null;
+    }
+
+    public Map<Long, String> teams() {
+        Map<Long, String> teams = new LinkedHashMap<>();
+        for (int row = 0; row < teamCount; row++) {
+            teams.put(teamIds.get(row), string(teamNames.get(row)));
+        }
+        return Collections.unmodifiableMap(teams);
+    }
+
+    public Map<String, List<Long>> projects() {
+        Map<String, List<Long>> projects = new LinkedHashMap<>();
+        for (int row = 0; row < projectCount; row++) {
+            int from = projectMemberOffsets.get(row);
+            int to = projectMemberOffsets.get(row + 1);
+            projects.put(string(projectNames.get(row)), new RowView<>(to - from, i -> projectMembers.get(from + i)));
+        }
+        return Collections.unmodifiableMap(projects);
+    }
+
+    /**
+     * All mentions ordered by the mentioning userId, read from the mapped columns on access.
+     */
+    public List<MentionHistory> mentions() {
+        return new RowView<>(mentionCount, this::mention);
+    }
+
+    public List<MentionHistory> mentionsByUser(long userId) {
+        int from = lowerBound(mentionUserIds, mentionCount, userId);
+        int to = userId == Long.MAX_VALUE ? mentionCount : lowerBound(mentionUserIds, mentionCount, userId + 1);
+        return new RowView<>(to - from, i -> mention(from + i));
+    }
+
+    // Bulk copies of the id columns, for building derived structures without materializing records
+
+    long[] userIdColumn() {
+        return toArray(userIds);
+    }
+
+    long[] userTeamIdColumn() {
+        return toArray(userTeamIds);
+    }
+
+    long[] userOrgIdColumn() {
+        return toArray(userOrgIds);
+    }
+
+    int[] projectMemberOffsetColumn() {
+        int[] values = new int[projectMemberOffsets.limit()];
+        projectMemberOffsets.get(0, values);
+        return values;
+    }
+
+    long[] projectMemberColumn() {
+        return toArray(projectMembers);
+    }
+
+    long[] mentionUserIdColumn() {
+        return toArray(mentionUserIds);
+    }
+
+    long[] mentionedUserIdColumn() {
+        return toArray(mentionedUserIds);
+    }
+
+    private User user(int row) {
+        return new User(userIds.get(row), string(userNames.get(row)), string(userEmails.get(row)),
+                userTeamIds.get(row), userOrgIds.get(row));
+    }
+
+    private MentionHistory mention(int row) {
+        return new MentionHistory(mentionUserIds.get(row), mentionedUserIds.get(row), LocalDate.ofEpochDay(mentionDays.get(row)));
+    }
+
+    private String string(int ref) {
+        int start = (int) stringOffsets.get(ref);
+        int end = (int) stringOffsets.get(ref + 1);
+        byte[] bytes = new byte[end - start];
+        stringData.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long[] toArray(LongBuffer column) {
+        long[] values = new long[column.limit()];
+        column.get(0, values);
+        return values;
+    }
+
+    private static int lowerBound(LongBuffer sorted, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class RowView<T> extends AbstractList<T> implements RandomAccess {
+        private final int size;
+        private final IntFunction<T> row;
+
+        private RowView(int size, IntFunction<T> row) {
+            this.size = size;
+            this.row = row;
+        }
+
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size);
+            return row.apply(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.ai_search;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+import static com.example.ai_search.ColumnarSnapshot.*;
+
+/**
+ * Writes users, teams, projects and mentions into the format read by {@link ColumnarSnapshot}.
+ * <p>
+ * Run {@code main} with an output path to write the sample data the repositories ship with:
+ * <pre>
+ * java -cp target/classes:... com.example.ai_search.ColumnarSnapshotWriter /var/lib/search-ai/snapshot.bin
+ * </pre>
+ * and start the application with {@code search.snapshot.path} pointing at the file.
+ */
+@Slf4j
+public final class ColumnarSnapshotWriter {
+
+    private ColumnarSnapshotWriter() {
+    }
+
+    // Exits with 2 on bad usage and 1 when the snapshot cannot be written, so scripts can tell the two apart
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            log.error("Usage: ColumnarSnapshotWriter <output file>");
+            System.exit(2);
+        }
+        Path output = Path.of(args[0]);
+        try {
+            write(output, UserRepository.sampleUsers, TeamRepository.Teams, ProjectRepository.projects,
+                    MentionHistoryRepository.mentionHistory);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not write snapshot to {}", output.toAbsolutePath(), e);
+            System.exit(1);
+        }
+        log.info("Wrote snapshot to {}", output.toAbsolutePath());
+    }
+
+    public static void write(Path path,
+                             Collection<User> users,
+                             Map<Long, String> teams,
+                             Map<String, List<Long>> projects,
+                             Collection<MentionHistory> mentions) throws IOException {
+        Dictionary dictionary = new Dictionary();
+
+        List<User> sortedUsers = users.stream().sorted(Comparator.comparingLong(User::userId)).toList();
+        long[] userIds = new long[sortedUsers.size()];
+        int[] userNames = new int[sortedUsers.size()];
+        int[] userEmails = new int[sortedUsers.size()];
+        long[] userTeamIds = new long[sortedUsers.size()];
+        long[] userOrgIds = new long[sortedUsers.size()];
+        for (int row = 0; row < sortedUsers.size(); row++) {
+            User user = sortedUsers.get(row);
+            userIds[row] = user.userId();
+            userNames[row] = dictionary.ref(user.name());
+            userEmails[row] = dictionary.ref(user.email());
+            userTeamIds[row] = user.teamId();
+            userOrgIds[row] = user.orgId();
+            if (row > 0 && userIds[row] == userIds[row - 1]) {
+                throw new IllegalArgumentException("Duplicate userId " + user.userId());
+            }
+        }
+
+        List<Map.Entry<Long, String>> sortedTeams = new ArrayList<>(new TreeMap<>(teams).entrySet());
+        long[] teamIds = new long[sortedTeams.size()];
+        int[] teamNames = new int[sortedTeams.size()];
+        for (int row = 0; row < sortedTeams.size(); row++) {
+            teamIds[row] = sortedTeams.get(row).getKey();
+            teamNames[row] = dictionary.ref(sortedTeams.get(row).getValue());
+        }
+
+        List<Map.Entry<String, List<Long>>> sortedProjects = new ArrayList<>(new TreeMap<>(projects).entrySet());
+        int[] projectNames = new int[sortedProjects.size()];
+        int[] projectMemberOffsets = new int[sortedProjects.size() + 1];
+        long[] projectMembers = sortedProjects.stream()
+                .flatMap(project -> project.getValue().stream())
+                .mapToLong(Long::longValue)
+                .toArray();
+        for (int row = 0; row < sortedProjects.size(); row++) {
+            projectNames[row] = dictionary.ref(sortedProjects.get(row).getKey());
+            projectMemberOffsets[row + 1] = projectMemberOffsets[row] + sortedProjects.get(row).getValue().size();
+        }
+
+        List<MentionHistory> sortedMentions = mentions.stream()
+                .sorted(Comparator.comparingLong(MentionHistory::userId))
+                .toList();
+        long[] mentionUserIds = new long[sortedMentions.size()];
+        long[] mentionedUserIds = new long[sortedMentions.size()];
+        long[] mentionDays = new long[sortedMentions.size()];
+        for (int row = 0; row < sortedMentions.size(); row++) {
+            MentionHistory mention = sortedMentions.get(row);
+            mentionUserIds[row] = mention.userId();
+            mentionedUserIds[row] = mention.mentionedUserId();
+            mentionDays[row] = mention.timePeriod().toEpochDay();
+        }
+
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        sections[STRING_OFFSETS] = longs(dictionary.offsets());
+        sections[STRING_DATA] = ByteBuffer.wrap(dictionary.data());
+        sections[USER_ID] = longs(userIds);
+        sections[USER_NAME] = ints(userNames);
+        sections[USER_EMAIL] = ints(userEmails);
+        sections[USER_TEAM_ID] = longs(userTeamIds);
+        sections[USER_ORG_ID] = longs(userOrgIds);
+        sections[TEAM_ID] = longs(teamIds);
+        sections[TEAM_NAME] = ints(teamNames);
+        sections[PROJECT_NAME] = ints(projectNames);
+        sections[PROJECT_MEMBER_OFFSETS] = ints(projectMemberOffsets);
+        sections[PROJECT_MEMBERS] = longs(projectMembers);
+        sections[MENTION_USER_ID] = longs(mentionUserIds);
+        sections[MENTIONED_USER_ID] = longs(mentionedUserIds);
+        sections[MENTION_DAY] = longs(mentionDays);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(dictionary.size())
+                .putInt(userIds.length)
+                .putInt(teamIds.length)
+                .putInt(projectNames.length)
+                .putInt(projectMembers.length)
+                .putInt(mentionUserIds.length)
+                .putLong(usersChecksum(sortedUsers));
+        long offset = align(HEADER_BYTES);
+        for (ByteBuffer section : sections) {
+            header.putLong(offset).putLong(section.remaining());
+            offset = align(offset + section.remaining());
+        }
+        header.flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            long position = align(HEADER_BYTES);
+            for (ByteBuffer section : sections) {
+                int length = section.remaining();
+                writeFully(channel, section, position);
+                position = align(position + length);
+            }
+            // Pad to the end of the last section, so that empty sections at the end still map inside the file
+            writeFully(channel, ByteBuffer.allocate((int) (position - channel.size())), channel.size());
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Checksum of the users' content in userId order, independent of the order they are passed in. Equal users give
+     * equal checksums whether they come from a snapshot or from a list.
+     */
+    static long usersChecksum(Collection<User> users) {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer numbers = ByteBuffer.allocate(3 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        users.stream().sorted(Comparator.comparingLong(User::userId)).forEach(user -> {
+            numbers.clear().putLong(user.userId()).putLong(user.teamId()).putLong(user.orgId()).flip();
+            checksum.update(numbers);
+            update(checksum, user.name());
+            update(checksum, user.email());
+        });
+        return checksum.getValue();
+    }
+
+    // Length-prefixed, so that moving characters between adjacent strings changes the checksum
+    private static void update(CRC32C checksum, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        checksum.update(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).flip());
+        checksum.update(bytes);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // Sections start on 8-byte boundaries so that the long columns are aligned in the mapping
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static ByteBuffer longs(long[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asLongBuffer().put(values);
+        return buffer;
+    }
+
+    private static ByteBuffer ints(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(values);
+        return buffer;
+    }
+
+    // Shared string dictionary; every distinct string is stored once
+    private static final class Dictionary {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private long bytes;
+
+        private int ref(String value) {
+            return refs.computeIfAbsent(value, key -> {
+                byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+                strings.add(encoded);
+                bytes += encoded.length;
+                return strings.size() - 1;
+            });
+        }
+
+        private int size() {
+            return strings.size();
+        }
+
+        private long[] offsets() {
+            long[] offsets = new long[strings.size() + 1];
+            for (int i = 0; i < strings.size(); i++) {
+                offsets[i + 1] = offsets[i] + strings.get(i).length;
+            }
+            return offsets;
+        }
+
+        private byte[] data() {
+            if (bytes > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("String dictionary exceeds 2 GB");
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) bytes);
+            strings.forEach(data::put);
+            return data.array();
+        }
+    }
+}
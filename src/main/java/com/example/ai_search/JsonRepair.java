@@ -0,0 +1,88 @@
+package com.example.ai_search;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * Cheap, local fixes for near-valid JSON produced by a model: markdown fences, prose around the JSON,
+ * typographic quotes, trailing commas and output cut off before the closing brackets.
+ * Anything beyond that is left to a retry.
+ */
+final class JsonRepair {
+
+    private JsonRepair() {
+    }
+
+    /**
+     * Returns the repaired JSON text, {@code "[]"} for an explicit "No user found" answer without JSON,
+     * or {@code null} if the text contains no JSON at all.
+     */
+    static String repair(String text) {
+        if (text == null) {
+            return null;
+        }
+        String cleaned = text.replaceAll("```(?:json)?", "")
+                .replace('“', '"')
+                .replace('”', '"')
+                .strip();
+
+        int start = firstJsonStart(cleaned);
+        if (start < 0) {
+            return cleaned.toLowerCase(Locale.ROOT).contains("no user found") ? "[]" : null;
+        }
+        return balance(cleaned.substring(start)).replaceAll(",\\s*([}\\]])", "$1");
+    }
+
+    private static int firstJsonStart(String text) {
+        int object = text.indexOf('{');
+        int array = text.indexOf('[');
+        if (object < 0) {
+            return array;
+        }
+        return array < 0 ? object : Math.min(object, array);
+    }
+
+    // Cuts the text after the bracket that closes the first value, or closes whatever is still open at the end
+    private static String balance(String json) {
+        Deque<Character> closers = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{' -> closers.push('}');
+                case '[' -> closers.push(']');
+                case '}', ']' -> {
+                    if (closers.isEmpty() || closers.pop() != c) {
+                        return json.substring(0, i);
+                    }
+                    if (closers.isEmpty()) {
+                        return json.substring(0, i + 1);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        StringBuilder completed = new StringBuilder(inString ? json + '"' : json);
+        // A dangling separator cannot be completed; drop it before closing
+        while (!completed.isEmpty() && ",: \t\r\n".indexOf(completed.charAt(completed.length() - 1)) >= 0) {
+            completed.setLength(completed.length() - 1);
+        }
+        closers.forEach(completed::append);
+        return completed.toString();
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.ai_search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.MMapDirectory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * {@link UserDirectory} backed by an embedded Lucene index on local disk.
+ * Segments are memory-mapped, so the index is served from the page cache and not from the heap.
+ */
+@Slf4j
+class LuceneUserDirectory implements UserDirectory {
+
+    private static final String USER_ID = "userId";
+    private static final String NAME = "name";
+    private static final String EMAIL = "email";
+    private static final String TEAM_ID = "teamId";
+    private static final String ORG_ID = "orgId";
+    private static final String TERMS = "terms";
+    // Commit user data key holding the version passed to replaceAll
+    private static final String USERS_VERSION = "usersVersion";
+
+    private final MMapDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    LuceneUserDirectory(Path indexPath) throws IOException {
+        this.directory = new MMapDirectory(indexPath);
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer())
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        this.writer = new IndexWriter(directory, config);
+        this.searcherManager = new SearcherManager(writer, null);
+        log.info("Opened Lucene user directory at {} with {} users", indexPath, count());
+    }
+
+    @Override
+    public void indexAll(Collection<User> users) {
+        try {
+            for (User user : users) {
+                writer.updateDocument(new Term(USER_ID, String.valueOf(user.userId())), toDocument(user));
+            }
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index users", e);
+        }
+    }
+
+    @Override
+    public void replaceAll(Collection<User> users, String version) {
+        try {
+            // Searchers keep seeing the previous users until the commit, which lands the users and version together
+            writer.deleteAll();
+            for (User user : users) {
+                writer.addDocument(toDocument(user));
+            }
+            writer.setLiveCommitData(Map.of(USERS_VERSION, version).entrySet());
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reindex users", e);
+        }
+    }
+
+    @Override
+    public String indexedVersion() {
+        try {
+            return SegmentInfos.readLatestCommit(directory).getUserData().get(USERS_VERSION);
+        } catch (IndexNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the user index version", e);
+        }
+    }
+
+    @Override
+    public User findById(long userId) {
+        List<User> users = search(new TermQuery(new Term(USER_ID, String.valueOf(userId))), 1);
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    @Override
+    public List<User> searchByName(String name, Long orgId, int limit) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        List<String> tokens = tokenize(name);
+        if (tokens.isEmpty()) {
+            query.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        }
+        for (String token : tokens) {
+            // Every query token has to match some name or email term, either exactly, as a prefix or within edit distance
+            BooleanQuery.Builder tokenQuery = new BooleanQuery.Builder()
+                    .add(new BoostQuery(new TermQuery(new Term(TERMS, token)), 3f), BooleanClause.Occur.SHOULD)
+                    .add(new BoostQuery(new PrefixQuery(new Term(TERMS, token)), 2f), BooleanClause.Occur.SHOULD);
+            if (token.length() >= 4) {
+                tokenQuery.add(new FuzzyQuery(new Term(TERMS, token), token.length() >= 7 ? 2 : 1), BooleanClause.Occur.SHOULD);
+            }
+            query.add(tokenQuery.build(), BooleanClause.Occur.MUST);
+        }
+        if (orgId != null) {
+            query.add(new TermQuery(new Term(ORG_ID, String.valueOf(orgId))), BooleanClause.Occur.FILTER);
+        }
+        return search(query.build(), limit);
+    }
+
+    @Override
+    public List<User> findByTeamId(long teamId) {
+        return search(new TermQuery(new Term(TEAM_ID, String.valueOf(teamId))), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long count() {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return searcher.getIndexReader().numDocs();
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to count users", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (IOException e) {
+            log.warn("Failed to close Lucene user directory", e);
+        }
+    }
+
+    private List<User> search(Query query, int limit) {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                int maxHits = Math.max(1, Math.min(limit, searcher.getIndexReader().maxDoc()));
+                TopDocs topDocs = searcher.search(query, maxHits);
+                List<User> users = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    users.add(toUser(searcher.storedFields().document(scoreDoc.doc)));
+                }
+                return users;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to search users", e);
+        }
+    }
+
+    private static Document toDocument(User user) {
+        Document document = new Document();
+        document.add(new StringField(USER_ID, String.valueOf(user.userId()), Field.Store.YES));
+        document.add(new StringField(NAME, user.name(), Field.Store.YES));
+        document.add(new StringField(EMAIL, user.email(), Field.Store.YES));
+        document.add(new StringField(TEAM_ID, String.valueOf(user.teamId()), Field.Store.YES));
+        document.add(new StringField(ORG_ID, String.valueOf(user.orgId()), Field.Store.YES));
+        document.add(new TextField(TERMS, user.name() + " " + user.email().replaceAll("[^\\p{L}\\p{N}]+", " "), Field.Store.NO));
+        return document;
+    }
+
+    private static User toUser(Document document) {
+        return new User(
+                Long.parseLong(document.get(USER_ID)),
+                document.get(NAME),
+                document.get(EMAIL),
+                Long.parseLong(document.get(TEAM_ID)),
+                Long.parseLong(document.get(ORG_ID)));
+    }
+
+    private static List<String> tokenize(String text) {
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.ai_search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.channels.ClosedByInterruptException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tries the configured models from smallest to largest and stops at the first answer that passes validation.
+ * If the last model's answer fails too, only the parts of it that pass validation are served. A cancelled search,
+ * one whose thread was interrupted, is never escalated.
+ * <p>
+ * For every model it records attempts, accepted and rejected answers, errors and latency under
+ * {@code cascade.<model>.*} in {@link SearchMetrics}. The share of answers a small model gets accepted
+ * is what decides whether it is worth keeping in front of the larger one.
+ */
+@Slf4j
+@Component
+class ModelCascade {
+
+    private final List<String> models;
+    private final SearchMetrics metrics;
+
+    ModelCascade(@Value("${search.cascade.models:mistral,llama3.1}") String[] models, SearchMetrics metrics) {
+        if (models.length == 0) {
+            throw new IllegalArgumentException("search.cascade.models must name at least one model");
+        }
+        this.models = List.of(models);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param generate produces an answer with the given model
+     * @param validate returns why an answer is not acceptable, or {@code null} if it is
+     * @param sanitize  strips what fails validation from an answer
+     * @return the first accepted answer, or the sanitized answer of the last model if none was accepted
+     * @throws CancellationException if the calling thread was interrupted
+     */
+    <T> T run(Function<String, T> generate, Function<T, String> validate, UnaryOperator<T> sanitize) {
+        for (int i = 0; i < models.size(); i++) {
+            String model = models.get(i);
+            boolean last = i == models.size() - 1;
+            String prefix = "cascade." + model;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Search was cancelled before trying " + model);
+            }
+            metrics.increment(prefix + ".attempts");
+
+            long start = System.nanoTime();
+            T answer;
+            try {
+                answer = generate.apply(model);
+            } catch (RuntimeException e) {
+                metrics.recordNanos(prefix + ".latency", System.nanoTime() - start);
+                if (cancelled(e)) {
+                    // Our own cancellation, not a model failure: neither an error nor a reason to wake the next model
+                    metrics.increment(prefix + ".cancelled");
+                    throw e instanceof CancellationException alreadyCancelled ? alreadyCancelled : cancellation(model, e);
+                }
+                metrics.increment(prefix + ".errors");
+                if (last) {
+                    throw e;
+                }
+                log.info("Model {} failed, escalating: {}", model, e.getMessage());
+                continue;
+            }
+            metrics.recordNanos(prefix + ".latency", System.nanoTime() - start);
+
+            String rejection = validate.apply(answer);
+            if (rejection == null) {
+                metrics.increment(prefix + ".accepted");
+                return answer;
+            }
+
+            metrics.increment(prefix + ".rejected");
+            if (last) {
+                // Known-bad rows must not reach the client, the chat memory or the result snapshot
+                metrics.increment(prefix + ".sanitized");
+                log.warn("Answer of model {} failed validation, serving only its valid part: {}", model, rejection);
+                return sanitize.apply(answer);
+            }
+            log.info("Answer of model {} failed validation, escalating: {}", model, rejection);
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    private static boolean cancelled(RuntimeException e) {
+        if (Thread.currentThread().isInterrupted() || e instanceof CancellationException) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof ClosedByInterruptException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static CancellationException cancellation(String model, RuntimeException cause) {
+        CancellationException cancellation = new CancellationException("Search was cancelled while " + model + " was generating");
+        cancellation.initCause(cause);
+        return cancellation;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.ai_search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads Ollama calls over several Ollama instances.
+ * <p>
+ * All requests share one pooled, keep-alive HTTP client. Each request is sent to the healthy instance with the
+ * fewest outstanding requests among those that already have the requested model loaded, falling back to those
+ * that have it pulled, and then to any healthy instance. A periodic health check refreshes the model lists and
+ * ejects an instance after consecutive failures until it answers again. Latency, requests and errors are recorded
+ * per endpoint under {@code ollama.<host:port>.*} in {@link SearchMetrics}; calls we abandon ourselves count as
+ * {@code cancelled}, not as errors, and never eject an instance.
+ */
+@Slf4j
+class OllamaEndpointPool implements ClientHttpRequestInterceptor, AutoCloseable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final List<Endpoint> endpoints;
+    private final int failureThreshold;
+    private final SearchMetrics metrics;
+    private final HttpClient httpClient;
+    private final RestClient healthCheckClient;
+    private final ScheduledExecutorService healthChecker;
+
+    OllamaEndpointPool(List<String> baseUrls, Duration healthCheckInterval, int failureThreshold, SearchMetrics metrics) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one Ollama endpoint is required");
+        }
+        this.endpoints = baseUrls.stream().map(url -> new Endpoint(URI.create(url.strip()))).toList();
+        this.failureThreshold = failureThreshold;
+        this.metrics = metrics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.healthCheckClient = RestClient.builder().requestFactory(requestFactory(Duration.ofSeconds(5))).build();
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ollama-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Request factory backed by the shared HTTP client, so connections to every instance are reused across calls.
+     */
+    JdkClientHttpRequestFactory requestFactory(Duration readTimeout) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return requestFactory;
+    }
+
+    String defaultBaseUrl() {
+        return endpoints.get(0).baseUrl.toString();
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        Endpoint endpoint = select(modelOf(body));
+        URI target = endpoint.resolve(request.getURI());
+
+        endpoint.outstanding.incrementAndGet();
+        metrics.increment(endpoint.metricPrefix + ".requests");
+        long start = System.nanoTime();
+        try {
+            ClientHttpResponse response = execution.execute(new HttpRequestWrapper(request) {
+                @Override
+                public URI getURI() {
+                    return target;
+                }
+            }, body);
+            if (response.getStatusCode().is5xxServerError()) {
+                metrics.increment(endpoint.metricPrefix + ".errors");
+            }
+            return response;
+        } catch (IOException e) {
+            if (interrupted(e)) {
+                // We abandoned the call ourselves (speculation hit, timeout); the endpoint did nothing wrong
+                metrics.increment(endpoint.metricPrefix + ".cancelled");
+                throw e;
+            }
+            metrics.increment(endpoint.metricPrefix + ".errors");
+            recordFailure(endpoint, e);
+            throw e;
+        } finally {
+            endpoint.outstanding.decrementAndGet();
+            metrics.recordNanos(endpoint.metricPrefix + ".latency", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Routes streaming calls, which go through WebClient and carry no model we can read, by outstanding requests only.
+     */
+    ExchangeFilterFunction streamingFilter() {
+        return (request, next) -> {
+            Endpoint endpoint = select(null);
+            endpoint.outstanding.incrementAndGet();
+            metrics.increment(endpoint.metricPrefix + ".requests");
+            long start = System.nanoTime();
+            return next.exchange(ClientRequest.from(request).url(endpoint.resolve(request.url())).build())
+                    .doOnNext(response -> {
+                        if (response.statusCode().is5xxServerError()) {
+                            metrics.increment(endpoint.metricPrefix + ".errors");
+                        }
+                    })
+                    .doOnError(error -> {
+                        metrics.increment(endpoint.metricPrefix + ".errors");
+                        recordFailure(endpoint, error);
+                    })
+                    .doFinally(signal -> {
+                        endpoint.outstanding.decrementAndGet();
+                        if (signal == SignalType.CANCEL) {
+                            metrics.increment(endpoint.metricPrefix + ".cancelled");
+                        }
+                        metrics.recordNanos(endpoint.metricPrefix + ".latency", System.nanoTime() - start);
+                    });
+        };
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+    }
+
+    private Endpoint select(String model) {
+        List<Endpoint> healthy = endpoints.stream().filter(endpoint -> endpoint.healthy).toList();
+        if (healthy.isEmpty()) {
+            // Everything is ejected; trying one is better than failing without a request
+            healthy = endpoints;
+        }
+
+        List<Endpoint> candidates = healthy;
+        if (model != null) {
+            String name = normalizeModel(model);
+            List<Endpoint> loaded = healthy.stream().filter(endpoint -> endpoint.loadedModels.contains(name)).toList();
+            List<Endpoint> available = healthy.stream().filter(endpoint -> endpoint.availableModels.contains(name)).toList();
+            candidates = !loaded.isEmpty() ? loaded : !available.isEmpty() ? available : healthy;
+        }
+
+        int fewest = candidates.stream().mapToInt(endpoint -> endpoint.outstanding.get()).min().orElse(0);
+        List<Endpoint> leastLoaded = candidates.stream().filter(endpoint -> endpoint.outstanding.get() == fewest).toList();
+        return leastLoaded.get(ThreadLocalRandom.current().nextInt(leastLoaded.size()));
+    }
+
+    private void checkHealth() {
+        for (Endpoint endpoint : endpoints) {
+            try {
+                Set<String> available = modelNames(endpoint.baseUrl.resolve("/api/tags"));
+                Set<String> loaded = modelNames(endpoint.baseUrl.resolve("/api/ps"));
+                endpoint.availableModels = available;
+                endpoint.loadedModels = loaded;
+                endpoint.consecutiveFailures.set(0);
+                if (!endpoint.healthy) {
+                    endpoint.healthy = true;
+                    log.info("Ollama endpoint {} is back with models {}", endpoint.baseUrl, available);
+                }
+            } catch (RuntimeException e) {
+                recordFailure(endpoint, e);
+            }
+        }
+    }
+
+    // JdkClientHttpRequest turns an interrupted send into an IOException
+    private static boolean interrupted(IOException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordFailure(Endpoint endpoint, Throwable e) {
+        if (endpoint.consecutiveFailures.incrementAndGet() >= failureThreshold && endpoint.healthy) {
+            endpoint.healthy = false;
+            metrics.increment(endpoint.metricPrefix + ".ejected");
+            log.warn("Ejecting Ollama endpoint {} after {} consecutive failures: {}",
+                    endpoint.baseUrl, endpoint.consecutiveFailures.get(), e.getMessage());
+        }
+    }
+
+    private Set<String> modelNames(URI uri) {
+        JsonNode response = healthCheckClient.get().uri(uri).retrieve().body(JsonNode.class);
+        Set<String> names = new HashSet<>();
+        if (response != null) {
+            response.path("models").forEach(model -> names.add(normalizeModel(model.path("name").asText())));
+        }
+        return Set.copyOf(names);
+    }
+
+    private static String modelOf(byte[] body) {
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            JsonNode model = OBJECT_MAPPER.readTree(body).get("model");
+            return model == null ? null : model.asText();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String normalizeModel(String model) {
+        return model.contains(":") ? model : model + ":latest";
+    }
+
+    private static final class Endpoint {
+        private final URI baseUrl;
+        private final String metricPrefix;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile Set<String> availableModels = Set.of();
+        private volatile Set<String> loadedModels = Set.of();
+
+        private Endpoint(URI baseUrl) {
+            this.baseUrl = baseUrl;
+            this.metricPrefix = "ollama." + baseUrl.getHost() + ":" + baseUrl.getPort();
+        }
+
+        private URI resolve(URI requestUri) {
+            return UriComponentsBuilder.fromUri(requestUri)
+                    .scheme(baseUrl.getScheme())
+                    .host(baseUrl.getHost())
+                    .port(baseUrl.getPort())
+                    .build(true)
+                    .toUri();
+        }
+    }
+}
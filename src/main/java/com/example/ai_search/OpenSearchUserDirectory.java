@@ -0,0 +1,188 @@
+package com.example.ai_search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.opensearch.client.RestClient;
+import org.opensearch.client.json.JsonData;
+import org.opensearch.client.json.jackson.JacksonJsonpMapper;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.FieldValue;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch._types.query_dsl.TextQueryType;
+import org.opensearch.client.opensearch.core.BulkRequest;
+import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.GetResponse;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.opensearch.client.transport.rest_client.RestClientTransport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link UserDirectory} backed by an OpenSearch index, for deployments that outgrow a single node's disk.
+ * See {@code Docker-Script/docker-compose-opensearch.yml} for a local instance.
+ */
+@Slf4j
+class OpenSearchUserDirectory implements UserDirectory {
+
+    private static final int BULK_BATCH_SIZE = 1000;
+    // Default index.max_result_window
+    private static final int MAX_RESULT_WINDOW = 10_000;
+    // Mapping _meta key holding the version passed to replaceAll
+    private static final String USERS_VERSION = "usersVersion";
+
+    private final RestClient restClient;
+    private final OpenSearchClient client;
+    private final String index;
+
+    OpenSearchUserDirectory(String url, String index) {
+        this.restClient = RestClient.builder(HttpHost.create(url)).build();
+        this.client = new OpenSearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+        this.index = index;
+        createIndexIfMissing();
+    }
+
+    @Override
+    public void indexAll(Collection<User> users) {
+        try {
+            List<User> batch = new ArrayList<>(BULK_BATCH_SIZE);
+            for (User user : users) {
+                batch.add(user);
+                if (batch.size() == BULK_BATCH_SIZE) {
+                    bulkIndex(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                bulkIndex(batch);
+            }
+            client.indices().refresh(r -> r.index(index));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index users into " + index, e);
+        }
+    }
+
+    /**
+     * Unlike the Lucene directory this is not atomic: searches during the replacement can miss users, and the
+     * version is recorded last so that an interrupted replacement is redone on the next start.
+     */
+    @Override
+    public void replaceAll(Collection<User> users, String version) {
+        try {
+            client.deleteByQuery(d -> d.index(index).query(q -> q.matchAll(m -> m)).refresh(true));
+            indexAll(users);
+            client.indices().putMapping(m -> m.index(index).meta(USERS_VERSION, JsonData.of(version)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reindex users into " + index, e);
+        }
+    }
+
+    @Override
+    public String indexedVersion() {
+        try {
+            Map<String, JsonData> meta = client.indices().getMapping(g -> g.index(index)).result().get(index).mappings().meta();
+            JsonData version = meta == null ? null : meta.get(USERS_VERSION);
+            return version == null ? null : version.to(String.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the user index version of " + index, e);
+        }
+    }
+
+    @Override
+    public User findById(long userId) {
+        try {
+            GetResponse<User> response = client.get(g -> g.index(index).id(String.valueOf(userId)), User.class);
+            return response.found() ? response.source() : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to get user " + userId, e);
+        }
+    }
+
+    @Override
+    public List<User> searchByName(String name, Long orgId, int limit) {
+        Query query = Query.of(q -> q.bool(b -> {
+            b.should(s -> s.multiMatch(m -> m
+                            .query(name)
+                            .type(TextQueryType.BoolPrefix)
+                            .fields("name", "name._2gram", "name._3gram")))
+                    .should(s -> s.match(m -> m
+                            .field("name")
+                            .query(FieldValue.of(name))
+                            .fuzziness("AUTO")))
+                    .should(s -> s.prefix(p -> p.field("email").value(name.toLowerCase())))
+                    .minimumShouldMatch("1");
+            if (orgId != null) {
+                b.filter(f -> f.term(t -> t.field("orgId").value(FieldValue.of(orgId))));
+            }
+            return b;
+        }));
+        return search(query, Math.min(limit, MAX_RESULT_WINDOW));
+    }
+
+    @Override
+    public List<User> findByTeamId(long teamId) {
+        return search(Query.of(q -> q.term(t -> t.field("teamId").value(FieldValue.of(teamId)))), MAX_RESULT_WINDOW);
+    }
+
+    @Override
+    public long count() {
+        try {
+            return client.count(c -> c.index(index)).count();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to count users in " + index, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            restClient.close();
+        } catch (IOException e) {
+            log.warn("Failed to close OpenSearch client", e);
+        }
+    }
+
+    private List<User> search(Query query, int size) {
+        try {
+            return client.search(s -> s.index(index).size(size).query(query), User.class)
+                    .hits().hits().stream()
+                    .map(Hit::source)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to search users in " + index, e);
+        }
+    }
+
+    private void bulkIndex(List<User> users) throws IOException {
+        BulkRequest.Builder request = new BulkRequest.Builder().index(index);
+        for (User user : users) {
+            request.operations(op -> op.index(i -> i.id(String.valueOf(user.userId())).document(user)));
+        }
+        BulkResponse response = client.bulk(request.build());
+        if (response.errors()) {
+            long failed = response.items().stream().filter(item -> item.error() != null).count();
+            log.warn("Bulk indexing into {} failed for {} of {} users", index, failed, users.size());
+        }
+    }
+
+    private void createIndexIfMissing() {
+        try {
+            if (client.indices().exists(e -> e.index(index)).value()) {
+                return;
+            }
+            client.indices().create(c -> c.index(index).mappings(m -> m
+                    .properties("userId", p -> p.long_(l -> l))
+                    .properties("name", p -> p.searchAsYouType(s -> s))
+                    .properties("email", p -> p.keyword(k -> k))
+                    .properties("teamId", p -> p.long_(l -> l))
+                    .properties("orgId", p -> p.long_(l -> l))));
+            log.info("Created OpenSearch user index {}", index);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create OpenSearch index " + index, e);
+        }
+    }
+}
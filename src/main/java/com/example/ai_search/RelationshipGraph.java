@@ -0,0 +1,296 @@
+package com.example.ai_search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * In-memory graph of users, teams and projects, answering multi-hop questions in one call.
+ * <p>
+ * Nodes are dense ints: users first, then teams, then projects. Each edge type is stored in compressed sparse row
+ * form, an {@code offsets} array indexed by source node and a {@code targets} array holding the neighbours of
+ * node {@code n} at {@code targets[offsets[n] .. offsets[n + 1])}.
+ */
+@Slf4j
+@Component
+class RelationshipGraph {
+
+    enum NodeType {USER, TEAM, PROJECT}
+
+    enum EdgeType {
+        MEMBER_OF_TEAM,   // user -> team
+        TEAM_MEMBER,      // team -> user
+        WORKS_ON,         // user -> project
+        PROJECT_MEMBER,   // project -> user
+        MENTIONS,         // user -> user they mentioned
+        MENTIONED_BY      // user -> users who mentioned them
+    }
+
+    record TraversalResult(List<User> users, List<String> teams, List<String> projects) {
+    }
+
+    private final UserRepository userRepository;
+
+    private final int userCount;
+    private final int teamCount;
+    private final long[] nodeKeys;          // userId or teamId, each sorted ascending; unused for projects
+    private final long[] userOrgIds;        // orgId of each user node
+    private final String[] nodeNames;       // team and project names; null for users
+    private final Map<String, Integer> teamNodes = new HashMap<>();
+    private final Map<String, Integer> projectNodes = new HashMap<>();
+    private final EnumMap<EdgeType, Csr> edges = new EnumMap<>(EdgeType.class);
+
+    RelationshipGraph(UserRepository userRepository,
+                      TeamRepository teamRepository,
+                      ProjectRepository projectRepository,
+                      MentionHistoryRepository mentionHistoryRepository,
+                      ObjectProvider<ColumnarSnapshot> snapshot) {
+        this.userRepository = userRepository;
+
+        ColumnarSnapshot columnarSnapshot = snapshot.getIfAvailable();
+        Columns columns = columnarSnapshot != null
+                ? Columns.of(columnarSnapshot)
+                : Columns.of(userRepository.getAllUsers(), projectRepository.getProjects(), mentionHistoryRepository.getAllMentions());
+        Map<Long, String> teams = new TreeMap<>(teamRepository.getTeams());
+
+        this.userCount = columns.userIds().length;
+        this.teamCount = teams.size();
+        int projectOffset = userCount + teamCount;
+        int nodeCount = projectOffset + columns.projectNames().length;
+        this.nodeKeys = Arrays.copyOf(columns.userIds(), nodeCount);
+        this.userOrgIds = columns.userOrgIds();
+        this.nodeNames = new String[nodeCount];
+
+        int node = userCount;
+        for (Map.Entry<Long, String> team : teams.entrySet()) {
+            nodeKeys[node] = team.getKey();
+            nodeNames[node] = team.getValue();
+            teamNodes.put(team.getValue().toLowerCase(Locale.ROOT), node++);
+        }
+        for (String project : columns.projectNames()) {
+            nodeNames[node] = project;
+            projectNodes.put(project.toLowerCase(Locale.ROOT), node++);
+        }
+
+        EdgeList memberOf = new EdgeList();
+        for (int user = 0; user < userCount; user++) {
+            int team = Arrays.binarySearch(nodeKeys, userCount, projectOffset, columns.userTeamIds()[user]);
+            if (team >= 0) {
+                memberOf.add(user, team);
+            }
+        }
+
+        EdgeList worksOn = new EdgeList();
+        int[] memberOffsets = columns.projectMemberOffsets();
+        for (int project = 0; project < columns.projectNames().length; project++) {
+            for (int i = memberOffsets[project]; i < memberOffsets[project + 1]; i++) {
+                int member = userNode(columns.projectMembers()[i]);
+                if (member >= 0) {
+                    worksOn.add(member, projectOffset + project);
+                }
+            }
+        }
+
+        EdgeList mentions = new EdgeList();
+        for (int i = 0; i < columns.mentionUserIds().length; i++) {
+            int from = userNode(columns.mentionUserIds()[i]);
+            int to = userNode(columns.mentionedUserIds()[i]);
+            if (from >= 0 && to >= 0) {
+                mentions.add(from, to);
+            }
+        }
+
+        edges.put(EdgeType.MEMBER_OF_TEAM, memberOf.toCsr(nodeCount, false));
+        edges.put(EdgeType.TEAM_MEMBER, memberOf.toCsr(nodeCount, true));
+        edges.put(EdgeType.WORKS_ON, worksOn.toCsr(nodeCount, false));
+        edges.put(EdgeType.PROJECT_MEMBER, worksOn.toCsr(nodeCount, true));
+        edges.put(EdgeType.MENTIONS, mentions.toCsr(nodeCount, false));
+        edges.put(EdgeType.MENTIONED_BY, mentions.toCsr(nodeCount, true));
+
+        log.info("Built relationship graph with {} nodes and {} edges", nodeCount, memberOf.size + worksOn.size + mentions.size);
+    }
+
+    /**
+     * Follows {@code path} from the start node and returns the nodes reached by the last step, without the start node.
+     * A single-step path is repeated up to {@code maxHops} times and every node reached on the way is returned;
+     * a longer path is cut to {@code maxHops} steps.
+     * <p>
+     * At most {@code limit} users of the org, and {@code limit} teams and projects, are returned; the traversal stops
+     * expanding once that many users of the org are reached where they can still count.
+     *
+     * @param start a userId for {@link NodeType#USER}, otherwise a team or project name
+     * @param orgId only users of this org are returned, or users of any org when null
+     */
+    TraversalResult traverse(NodeType startType, String start, List<EdgeType> path, int maxHops, int limit, Long orgId) {
+        Integer startNode = startNode(startType, start);
+        if (startNode == null || path.isEmpty() || maxHops <= 0 || limit <= 0) {
+            return new TraversalResult(List.of(), List.of(), List.of());
+        }
+
+        boolean repeat = path.size() == 1;
+        int hops = repeat ? maxHops : Math.min(path.size(), maxHops);
+        BitSet frontier = new BitSet();
+        frontier.set(startNode);
+        BitSet reached = new BitSet();
+        BitSet visited = new BitSet();
+        visited.set(startNode);
+        int matched = 0;
+
+        for (int hop = 0; hop < hops && !frontier.isEmpty() && matched < limit; hop++) {
+            Csr csr = edges.get(repeat ? path.get(0) : path.get(hop));
+            // Every node reached by a repeated step is returned, but only the last step of a longer path is
+            boolean counts = repeat || hop == hops - 1;
+            BitSet next = new BitSet();
+            expand:
+            for (int node = frontier.nextSetBit(0); node >= 0; node = frontier.nextSetBit(node + 1)) {
+                for (int i = csr.offsets[node]; i < csr.offsets[node + 1]; i++) {
+                    int target = csr.targets[i];
+                    // Only expand nodes not seen before, so cycles in mentions do not blow up the frontier
+                    if (next.get(target) || (repeat && visited.get(target))) {
+                        continue;
+                    }
+                    next.set(target);
+                    if (counts && target != startNode && isUserOf(target, orgId) && ++matched >= limit) {
+                        break expand;
+                    }
+                }
+            }
+            if (repeat) {
+                visited.or(next);
+                reached.or(next);
+            } else {
+                reached = next;
+            }
+            frontier = next;
+        }
+        reached.clear(startNode);
+        return toResult(reached, limit, orgId);
+    }
+
+    private Integer startNode(NodeType type, String start) {
+        if (start == null) {
+            return null;
+        }
+        String key = start.strip().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case USER -> {
+                try {
+                    int node = userNode(Long.parseLong(key));
+                    yield node < 0 ? null : node;
+                } catch (NumberFormatException e) {
+                    yield null;
+                }
+            }
+            case TEAM -> teamNodes.get(key);
+            case PROJECT -> projectNodes.get(key);
+        };
+    }
+
+    // User nodes are in userId order, so the node of a user is found by binary search instead of a boxed map
+    private int userNode(long userId) {
+        int node = Arrays.binarySearch(nodeKeys, 0, userCount, userId);
+        return node < 0 ? -1 : node;
+    }
+
+    private boolean isUserOf(int node, Long orgId) {
+        return node < userCount && (orgId == null || userOrgIds[node] == orgId);
+    }
+
+    // Users of other orgs are skipped on their orgId column, so only returned users are looked up
+    private TraversalResult toResult(BitSet nodes, int limit, Long orgId) {
+        List<User> users = new ArrayList<>();
+        List<String> teams = new ArrayList<>();
+        List<String> projects = new ArrayList<>();
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            if (node < userCount) {
+                if (users.size() < limit && isUserOf(node, orgId)) {
+                    User user = userRepository.getUserByUserId(nodeKeys[node]);
+                    if (user != null) {
+                        users.add(user);
+                    }
+                }
+            } else if (node < userCount + teamCount) {
+                if (teams.size() < limit) {
+                    teams.add(nodeNames[node]);
+                }
+            } else if (projects.size() < limit) {
+                projects.add(nodeNames[node]);
+            }
+        }
+        return new TraversalResult(users, teams, projects);
+    }
+
+    record Csr(int[] offsets, int[] targets) {
+    }
+
+    /**
+     * The id columns the graph is built from: users sorted by userId, projects sorted by name with their members
+     * at {@code projectMembers[projectMemberOffsets[p] .. projectMemberOffsets[p + 1])}, and mentions as parallel
+     * arrays. Read straight from the snapshot when there is one, so no user or mention record is materialized.
+     */
+    private record Columns(long[] userIds, long[] userTeamIds, long[] userOrgIds, String[] projectNames,
+                           int[] projectMemberOffsets, long[] projectMembers, long[] mentionUserIds,
+                           long[] mentionedUserIds) {
+
+        static Columns of(ColumnarSnapshot snapshot) {
+            return new Columns(snapshot.userIdColumn(), snapshot.userTeamIdColumn(), snapshot.userOrgIdColumn(),
+                    snapshot.projects().keySet().toArray(String[]::new), snapshot.projectMemberOffsetColumn(),
+                    snapshot.projectMemberColumn(), snapshot.mentionUserIdColumn(), snapshot.mentionedUserIdColumn());
+        }
+
+        static Columns of(List<User> users, Map<String, List<Long>> projects, List<MentionHistory> mentions) {
+            List<User> sortedUsers = users.stream().sorted(Comparator.comparingLong(User::userId)).toList();
+            Map<String, List<Long>> sortedProjects = new TreeMap<>(projects);
+            int[] projectMemberOffsets = new int[sortedProjects.size() + 1];
+            int project = 0;
+            for (List<Long> members : sortedProjects.values()) {
+                projectMemberOffsets[project + 1] = projectMemberOffsets[project++] + members.size();
+            }
+            return new Columns(
+                    sortedUsers.stream().mapToLong(User::userId).toArray(),
+                    sortedUsers.stream().mapToLong(User::teamId).toArray(),
+                    sortedUsers.stream().mapToLong(User::orgId).toArray(),
+                    sortedProjects.keySet().toArray(String[]::new),
+                    projectMemberOffsets,
+                    sortedProjects.values().stream().flatMap(List::stream).mapToLong(Long::longValue).toArray(),
+                    mentions.stream().mapToLong(MentionHistory::userId).toArray(),
+                    mentions.stream().mapToLong(MentionHistory::mentionedUserId).toArray());
+        }
+    }
+
+    static final class EdgeList {
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int size;
+
+        void add(int source, int target) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            sources[size] = source;
+            targets[size++] = target;
+        }
+
+        // Counting sort by source node; reversed builds the CSR of the inverse edge type
+        Csr toCsr(int nodeCount, boolean reversed) {
+            int[] from = reversed ? targets : sources;
+            int[] to = reversed ? sources : targets;
+            int[] offsets = new int[nodeCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] cursor = Arrays.copyOf(offsets, nodeCount);
+            int[] csrTargets = new int[size];
+            for (int i = 0; i < size; i++) {
+                csrTargets[cursor[from[i]]++] = to[i];
+            }
+            return new Csr(offsets, csrTargets);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.ai_search;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Renders what the model would otherwise look up with tool calls before answering "me", "my team" or
+ * "my mentions": the requester's profile, their team roster, their projects and whom they recently mentioned.
+ * The lookups run in parallel and the rendered block is cached per org, team and user for a short time.
+ */
+@Component
+class RequesterContextProvider {
+
+    private static final int MAX_ROSTER_NAMES = 20;
+    private static final int MAX_RECENT_MENTIONS = 5;
+    private static final int MAX_PROJECTS = 20;
+
+    private final UserRepository userRepository;
+    private final TeamRepository teamRepository;
+    private final MentionHistoryRepository mentionHistoryRepository;
+    private final RelationshipGraph relationshipGraph;
+    private final ExecutorService searchExecutor;
+    private final SearchMetrics metrics;
+    private final Duration ttl;
+    private final Map<Key, CachedBlock> cache = new ConcurrentHashMap<>();
+
+    RequesterContextProvider(UserRepository userRepository,
+                             TeamRepository teamRepository,
+                             MentionHistoryRepository mentionHistoryRepository,
+                             RelationshipGraph relationshipGraph,
+                             ExecutorService searchExecutor,
+                             SearchMetrics metrics,
+                             @Value("${search.requester-context.ttl:60s}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.teamRepository = teamRepository;
+        this.mentionHistoryRepository = mentionHistoryRepository;
+        this.relationshipGraph = relationshipGraph;
+        this.searchExecutor = searchExecutor;
+        this.metrics = metrics;
+        this.ttl = ttl;
+    }
+
+    String contextBlock(Long orgId, Long teamId, Long userId) {
+        if (userId == null && teamId == null) {
+            return "The requester is unknown.";
+        }
+
+        Key key = new Key(orgId, teamId, userId);
+        long now = System.currentTimeMillis();
+        CachedBlock cached = cache.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            metrics.increment("requester-context.hits");
+            return cached.block;
+        }
+        metrics.increment("requester-context.misses");
+
+        String block = render(orgId, teamId, userId);
+        cache.values().removeIf(entry -> entry.expiresAt <= now);
+        cache.put(key, new CachedBlock(block, now + ttl.toMillis()));
+        return block;
+    }
+
+    private String render(Long orgId, Long teamId, Long userId) {
+        CompletableFuture<User> profile = userId == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> userRepository.getUserByUserId(userId), searchExecutor);
+        CompletableFuture<String> roster = teamId != null
+                ? CompletableFuture.supplyAsync(() -> roster(teamId, orgId), searchExecutor)
+                : profile.thenApplyAsync(user -> user == null ? null : roster(user.teamId(), orgId), searchExecutor);
+        CompletableFuture<String> projects = userId == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> projects(userId), searchExecutor);
+        CompletableFuture<String> mentions = userId == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> recentMentions(userId, orgId), searchExecutor);
+
+        StringBuilder block = new StringBuilder();
+        User requester = profile.join();
+        if (requester != null) {
+            block.append("Requester: ").append(describe(requester))
+                    .append(", email ").append(requester.email())
+                    .append(", teamId ").append(requester.teamId())
+                    .append(", orgId ").append(requester.orgId()).append('\n');
+        } else if (userId != null) {
+            block.append("Requester: unknown userId ").append(userId).append('\n');
+        }
+        appendLine(block, "Team", roster.join());
+        appendLine(block, "Projects", projects.join());
+        appendLine(block, "Recently mentioned", mentions.join());
+        return block.toString().strip();
+    }
+
+    private String roster(long teamId, Long orgId) {
+        String teamName = teamRepository.getTeamNameById(teamId);
+        List<User> members = userRepository.getUsersByTeamId(teamId).stream()
+                .filter(user -> orgId == null || user.orgId() == orgId)
+                .toList();
+        String names = members.stream()
+                .limit(MAX_ROSTER_NAMES)
+                .map(RequesterContextProvider::describe)
+                .collect(Collectors.joining(", "));
+        String more = members.size() > MAX_ROSTER_NAMES ? ", and " + (members.size() - MAX_ROSTER_NAMES) + " more" : "";
+        return (teamName == null ? "teamId " + teamId : teamName + " (teamId " + teamId + ")")
+                + ", " + members.size() + " members: " + names + more;
+    }
+
+    private String projects(long userId) {
+        List<String> projects = relationshipGraph.traverse(RelationshipGraph.NodeType.USER, String.valueOf(userId),
+                List.of(RelationshipGraph.EdgeType.WORKS_ON), 1, MAX_PROJECTS, null).projects();
+        return projects.isEmpty() ? "none" : String.join(", ", projects);
+    }
+
+    // Like the roster, only users of the requester's org are shown; an unknown user cannot be placed in any org
+    private String recentMentions(long userId, Long orgId) {
+        List<MentionHistory> mentions = mentionHistoryRepository.getMentionsByUser(userId).stream()
+                .sorted(Comparator.comparing(MentionHistory::timePeriod).reversed())
+                .toList();
+        List<String> recent = new ArrayList<>();
+        for (MentionHistory mention : mentions) {
+            if (recent.size() == MAX_RECENT_MENTIONS) {
+                break;
+            }
+            User mentioned = userRepository.getUserByUserId(mention.mentionedUserId());
+            if (orgId != null && (mentioned == null || mentioned.orgId() != orgId)) {
+                continue;
+            }
+            String who = mentioned == null ? "userId " + mention.mentionedUserId() : describe(mentioned);
+            recent.add(who + " on " + mention.timePeriod());
+        }
+        return recent.isEmpty() ? "nobody" : String.join(", ", recent);
+    }
+
+    private static void appendLine(StringBuilder block, String label, String value) {
+        if (value != null) {
+            block.append(label).append(": ").append(value).append('\n');
+        }
+    }
+
+    private static String describe(User user) {
+        return user.name() + " (userId " + user.userId() + ")";
+    }
+
+    private record Key(Long orgId, Long teamId, Long userId) {
+    }
+
+    private record CachedBlock(String block, long expiresAt) {
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.ai_search;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the results beyond the first page of a search for a while, so later pages are read from here and not
+ * generated again. Pages are addressed by opaque cursors naming a snapshot and an offset into it.
+ */
+@Component
+class ResultSnapshotStore {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Duration ttl;
+    private final int maxSnapshots;
+    private final Clock clock;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    ResultSnapshotStore(@Value("${search.pagination.snapshot-ttl:10m}") Duration ttl,
+                        @Value("${search.pagination.max-snapshots:10000}") int maxSnapshots) {
+        this.ttl = ttl;
+        this.maxSnapshots = maxSnapshots;
+        this.clock = Clock.systemUTC();
+    }
+
+    record Page(List<User> users, String nextCursor) {
+    }
+
+    /**
+     * Returns the answer, cut to {@code limit}, as the first page. Only when it fills the page are the rest of the
+     * answer and the remainder stored under a new snapshot for the later pages; a shorter answer, empty included,
+     * is the whole result and never topped up.
+     */
+    Page firstPage(List<User> answer, List<User> remainder, int limit, Long orgId) {
+        if (answer.size() < limit) {
+            return new Page(answer, null);
+        }
+        List<User> rest = new ArrayList<>(answer.subList(limit, answer.size()));
+        rest.addAll(remainder);
+        if (rest.isEmpty()) {
+            return new Page(answer, null);
+        }
+        evictExpired();
+        byte[] id = new byte[16];
+        RANDOM.nextBytes(id);
+        String snapshotId = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+        snapshots.put(snapshotId, new Snapshot(List.copyOf(rest), orgId, clock.millis() + ttl.toMillis()));
+        return new Page(answer.subList(0, limit), cursor(snapshotId, 0));
+    }
+
+    /**
+     * Returns the page the cursor points to, or {@code null} if the cursor is malformed, expired,
+     * or was issued for another organization.
+     */
+    Page page(String cursor, int limit, Long orgId) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int separator = decoded.lastIndexOf(':');
+        if (separator < 0) {
+            return null;
+        }
+
+        Snapshot snapshot = snapshots.get(decoded.substring(0, separator));
+        if (snapshot == null || snapshot.expiresAt < clock.millis()) {
+            return null;
+        }
+        if (snapshot.orgId != null && !snapshot.orgId.equals(orgId)) {
+            return null;
+        }
+
+        int offset;
+        try {
+            offset = Integer.parseInt(decoded.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int end = Math.min(snapshot.users.size(), offset + limit);
+        if (offset < 0 || offset >= end) {
+            return new Page(List.of(), null);
+        }
+        String nextCursor = end < snapshot.users.size() ? cursor(decoded.substring(0, separator), end) : null;
+        return new Page(snapshot.users.subList(offset, end), nextCursor);
+    }
+
+    private void evictExpired() {
+        long now = clock.millis();
+        snapshots.values().removeIf(snapshot -> snapshot.expiresAt < now);
+        if (snapshots.size() >= maxSnapshots) {
+            snapshots.entrySet().stream()
+                    .min(Map.Entry.comparingByValue((a, b) -> Long.compare(a.expiresAt, b.expiresAt)))
+                    .ifPresent(oldest -> snapshots.remove(oldest.getKey()));
+        }
+    }
+
+    private static String cursor(String snapshotId, int offset) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((snapshotId + ":" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Snapshot(List<User> users, Long orgId, long expiresAt) {
+    }
+}
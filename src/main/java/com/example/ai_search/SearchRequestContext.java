@@ -0,0 +1,74 @@
+package com.example.ai_search;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * State shared by the tool callbacks of a single model attempt.
+ * <p>
+ * Tools hand the model at most {@code limit} users of the requested organization, so the model never has to
+ * reproduce users that would be cut off anyway. Every in-scope user a tool saw is kept, in the order seen,
+ * to fill the pages after the first one. Those pages are raw tool output: the model ranked only the first page.
+ */
+final class SearchRequestContext {
+
+    private final int limit;
+    private final Long orgId;
+    private final SpeculativeLookup speculation;
+    private final Map<Long, User> seenUsers = new LinkedHashMap<>();
+
+    SearchRequestContext(int limit, Long orgId, SpeculativeLookup speculation) {
+        this.limit = limit;
+        this.orgId = orgId;
+        this.speculation = speculation;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    Long orgId() {
+        return orgId;
+    }
+
+    SpeculativeLookup speculation() {
+        return speculation;
+    }
+
+    boolean inScope(User user) {
+        return user != null && (orgId == null || user.orgId() == orgId);
+    }
+
+    /**
+     * Remembers the in-scope users and returns the first {@code limit} of them.
+     */
+    List<User> topK(List<User> users) {
+        List<User> inScope = users.stream().filter(this::inScope).toList();
+        synchronized (seenUsers) {
+            inScope.forEach(user -> seenUsers.putIfAbsent(user.userId(), user));
+        }
+        return inScope.stream().limit(limit).toList();
+    }
+
+    void remember(User user) {
+        if (inScope(user)) {
+            synchronized (seenUsers) {
+                seenUsers.putIfAbsent(user.userId(), user);
+            }
+        }
+    }
+
+    /**
+     * The in-scope users the tools returned that are not in the answer, in the order returned.
+     */
+    List<User> remainder(List<User> answer) {
+        Set<Long> answered = answer.stream().filter(Objects::nonNull).map(User::userId).collect(Collectors.toSet());
+        synchronized (seenUsers) {
+            return seenUsers.values().stream().filter(user -> !answered.contains(user.userId())).toList();
+        }
+    }
+}
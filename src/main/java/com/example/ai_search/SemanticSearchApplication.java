@@ -1,11 +1,14 @@
 package com.example.ai_search;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.github.victools.jsonschema.generator.*;
@@ -13,35 +16,69 @@ import com.github.victools.jsonschema.module.jackson.JacksonModule;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
-import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.converter.StructuredOutputConverter;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
-import org.springframework.ai.model.function.FunctionCallbackWrapper;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.ai.ollama.api.OllamaApi;
 import org.springframework.ai.ollama.api.OllamaModel;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Description;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @SpringBootApplication
@@ -57,8 +94,23 @@ public class SemanticSearchApplication {
 class OllamaConfig {
 
     @Bean
-    public OllamaApi ollamaApi() {
-        return new OllamaApi();
+    public OllamaEndpointPool ollamaEndpointPool(
+            @Value("${search.ollama.endpoints:${spring.ai.ollama.base-url:http://localhost:11434}}") String[] endpoints,
+            @Value("${search.ollama.health-check-interval:10s}") Duration healthCheckInterval,
+            @Value("${search.ollama.failure-threshold:3}") int failureThreshold,
+            SearchMetrics metrics) {
+        return new OllamaEndpointPool(List.of(endpoints), healthCheckInterval, failureThreshold, metrics);
+    }
+
+    @Bean
+    public OllamaApi ollamaApi(OllamaEndpointPool pool,
+                               @Value("${search.ollama.read-timeout:5m}") Duration readTimeout) {
+        // Chat and embedding calls are routed per request by the pool; the base URL only seeds the request URI
+        return new OllamaApi(pool.defaultBaseUrl(),
+                RestClient.builder()
+                        .requestFactory(pool.requestFactory(readTimeout))
+                        .requestInterceptor(pool),
+                WebClient.builder().filter(pool.streamingFilter()));
     }
 
     @Bean
@@ -71,6 +123,17 @@ class OllamaConfig {
         return new OllamaEmbeddingModel(ollamaApi, defaultOptions);
     }
 
+    @Bean
+    public BoundedChatMemory chatMemory(
+            @Value("${search.memory.conversation-token-budget:2000}") int conversationTokenBudget,
+            @Value("${search.memory.global-token-budget:2000000}") long globalTokenBudget,
+            @Value("${search.memory.idle-timeout:30m}") Duration idleTimeout,
+            @Value("${search.memory.log-directory:}") String logDirectory) {
+        return new BoundedChatMemory(conversationTokenBudget, globalTokenBudget, idleTimeout,
+                BoundedChatMemory.ConversationSummarizer.extractive(),
+                logDirectory.isBlank() ? null : Path.of(logDirectory));
+    }
+
     @Bean
     @Description("Get user by userId")
     public Function<Long, User> getUserByUserId(UserRepository userRepository) {
@@ -102,96 +165,378 @@ class OllamaConfig {
     }
 }
 
+// Configuration class for the user directory backend
+@Configuration
+class UserDirectoryConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "search.user-directory.backend", havingValue = "lucene", matchIfMissing = true)
+    public UserDirectory luceneUserDirectory(
+            @Value("${search.user-directory.lucene.path:${java.io.tmpdir}/search-ai-users}") String indexPath) throws IOException {
+        return new LuceneUserDirectory(Path.of(indexPath));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "search.user-directory.backend", havingValue = "opensearch")
+    public UserDirectory openSearchUserDirectory(
+            @Value("${search.user-directory.opensearch.url:http://localhost:9200}") String url,
+            @Value("${search.user-directory.opensearch.index:users}") String index) {
+        return new OpenSearchUserDirectory(url, index);
+    }
+}
+
+// Configuration class for the optional memory-mapped snapshot the repositories load their data from
+@Configuration
+class SnapshotConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "search.snapshot.path")
+    public ColumnarSnapshot columnarSnapshot(@Value("${search.snapshot.path}") String path) throws IOException {
+        return ColumnarSnapshot.open(Path.of(path));
+    }
+}
+
+// Configuration class for the fast-startup profile
+@Slf4j
+@Configuration
+class StartupConfig {
+
+    // Searches never touch the vector store; deferring it keeps its pgvector schema init, the first Postgres connection,
+    // off the startup path. The DataSource stays eager, since the JDBC auto-configuration depends on it, but the
+    // Hikari pool opens no connection until the vector store first asks for one.
+    @Bean
+    @ConditionalOnProperty(name = "search.startup.lazy-infrastructure", havingValue = "true")
+    public static BeanFactoryPostProcessor lazyInfrastructure() {
+        return beanFactory -> Arrays.stream(beanFactory.getBeanNamesForType(VectorStore.class, true, false))
+                .forEach(name -> {
+                    beanFactory.getBeanDefinition(name).setLazyInit(true);
+                    log.info("Initializing {} on first use", name);
+                });
+    }
+}
+
+// Configuration class for the threads that run model calls and the lookups racing them
+@Configuration
+class SearchExecutionConfig {
+
+    // Each admitted search uses up to about eight threads: itself, the generation, the speculation and the prefetches
+    @Bean
+    public Semaphore searchPermits(@Value("${search.max-concurrent-searches:32}") int maxConcurrentSearches) {
+        return new Semaphore(maxConcurrentSearches);
+    }
+
+    // Bounded and without a queue; when every thread is busy the submitting thread runs the task itself,
+    // which slows the caller down instead of growing the pool
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService searchExecutor(@Value("${search.executor.max-threads:256}") int maxThreads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "search-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
+
 // Controller to handle the search API requests
 @Slf4j
 @RestController
 @RequestMapping("/api/search")
 class SearchController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private SearchService searchService;
 
+    @Autowired
+    private SearchMetrics searchMetrics;
+
+    @Autowired
+    private ExecutorService searchExecutor;
+
+    @Autowired
+    private Semaphore searchPermits;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private ClientKeepAlive clientKeepAlive;
+
+    @Value("${search.request-timeout:120s}")
+    private Duration requestTimeout;
+
+    // Shorter than search.request-timeout, so a slow owner is answered with 504 before this request times out
+    @Value("${search.cluster.forward-timeout:110s}")
+    private Duration forwardTimeout;
+
+    @GetMapping("/metrics")
+    public Map<String, Object> metrics() {
+        return searchMetrics.snapshot();
+    }
+
+    // Runs the search off the servlet thread; a timeout (504) or a client that went away interrupts the model call and
+    // its tool calls. Disconnects are noticed through the keep-alive writes of ClientKeepAlive. A forwarded request is
+    // not probed, because the forwarding node relays headers only; it cancels its forward when its own client leaves.
     @GetMapping
-    public ResponseEntity<?> search(
-            @RequestParam String query,
+    public DeferredResult<ResponseEntity<?>> search(
+            @RequestParam(required = false) String query,
             @RequestParam(defaultValue = "5") int limit,
             @RequestParam(required = false) Long orgId,
             @RequestParam(required = false) Long teamId,
-            @RequestParam(required = false) Long userId) {
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = ClusterMembership.FORWARDED_HEADER, required = false) String forwardedBy,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+
+        log.info("\n\n>> Received search request: query={}, limit={}, orgId={}, teamId={}, userId={}, conversationId={}, cursor={}, forwardedBy={}",
+                query, limit, orgId, teamId, userId, conversationId, cursor, forwardedBy);
+
+        DeferredResult<ResponseEntity<?>> deferredResult = new DeferredResult<>(requestTimeout.toMillis());
+        if (limit <= 0) {
+            deferredResult.setResult(ResponseEntity.badRequest().body("limit must be positive"));
+            return deferredResult;
+        }
 
-        log.info("\n\n>> Received search request: query={}, limit={}, orgId={}, teamId={}, userId={}",
-                query, limit, orgId, teamId, userId);
+        // Whatever runs for this request, the local search or the forward, is cancelled when the client goes away
+        AtomicReference<Future<?>> work = new AtomicReference<>();
+        ClientKeepAlive.Watch watch = clientKeepAlive.watch(deferredResult, response, forwardedBy == null, () -> {
+            Future<?> running = work.get();
+            if (running != null) {
+                cancel(running, "disconnect");
+            }
+        });
 
-        try {
-            List<User> results = searchService.search(query, limit, orgId, teamId, userId);
-            return ResponseEntity.ok(results);
-        } catch (Exception e) {
-            log.error("Error occurred during search", e);
-            return ResponseEntity.internalServerError().body("An error occurred during the search operation");
+        // Each org is served by one node, so its caches, snapshots and conversations stay warm there.
+        // A forwarded request is always served where it lands, which rules out forwarding loops.
+        String owner = clusterMembership.ownerOf(orgId);
+        if (forwardedBy == null && !clusterMembership.isSelf(owner)) {
+            forward(owner, request.getQueryString(), deferredResult, watch, work,
+                    () -> searchLocally(deferredResult, watch, work, query, limit, orgId, teamId, userId, conversationId, cursor));
+        } else {
+            searchLocally(deferredResult, watch, work, query, limit, orgId, teamId, userId, conversationId, cursor);
+        }
+        return deferredResult;
+    }
+
+    private void searchLocally(DeferredResult<ResponseEntity<?>> deferredResult, ClientKeepAlive.Watch watch,
+                               AtomicReference<Future<?>> work, String query, int limit, Long orgId,
+                               Long teamId, Long userId, String conversationId, String cursor) {
+        if (cursor != null) {
+            // Later pages come from the snapshot of the first one and never reach the model
+            ResultSnapshotStore.Page page = searchService.nextPage(cursor, limit, orgId);
+            watch.complete(page == null
+                    ? ResponseEntity.status(HttpStatus.GONE).body("The cursor is unknown or has expired")
+                    : toResponse(page));
+            return;
+        }
+        if (query == null || query.isBlank()) {
+            watch.complete(ResponseEntity.badRequest().body("query or cursor is required"));
+            return;
+        }
+
+        if (!searchPermits.tryAcquire()) {
+            searchMetrics.increment("search.rejected");
+            watch.complete(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("Too many searches in progress"));
+            return;
+        }
+        // Completion also covers timeouts and a task cancelled before it started
+        deferredResult.onCompletion(searchPermits::release);
+
+        Future<?> task = searchExecutor.submit(() -> {
+            try {
+                ResultSnapshotStore.Page page = searchService.search(query, limit, orgId, teamId, userId, conversationId);
+                watch.complete(toResponse(page));
+            } catch (CancellationException e) {
+                log.info("Search was cancelled: query={}", query);
+            } catch (Exception e) {
+                log.error("Error occurred during search", e);
+                watch.complete(ResponseEntity.internalServerError().body("An error occurred during the search operation"));
+            }
+        });
+        work.set(task);
+
+        deferredResult.onTimeout(() -> {
+            cancel(task, "timeout");
+            watch.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("The search operation timed out"));
+        });
+        deferredResult.onError(error -> cancel(task, "error"));
+    }
+
+    // Relays the owner's answer; when the owner cannot be reached or fails, the search runs here instead
+    private void forward(String owner, String queryString, DeferredResult<ResponseEntity<?>> deferredResult,
+                         ClientKeepAlive.Watch watch, AtomicReference<Future<?>> work, Runnable fallback) {
+        CompletableFuture<HttpResponse<String>> response = clusterMembership.forward(owner,
+                "/api/search" + (queryString == null ? "" : "?" + queryString), forwardTimeout);
+        work.set(response);
+        deferredResult.onTimeout(() -> {
+            response.cancel(true);
+            watch.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("The search operation timed out"));
+        });
+        deferredResult.onError(error -> response.cancel(true));
+
+        response.whenComplete((ownerResponse, error) -> {
+            if (error == null) {
+                // Any HTTP answer, 5xx included, means the owner is up; its errors are relayed unchanged
+                searchMetrics.increment("cluster.forwarded");
+                watch.complete(relay(ownerResponse));
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (deferredResult.isSetOrExpired() || cause instanceof CancellationException) {
+                return;
+            }
+            // The owner accepted the search but is still working on it; serving it here as well would only
+            // duplicate the work this late, and a slow owner is not a dead one
+            if (cause instanceof HttpTimeoutException && !(cause instanceof HttpConnectTimeoutException)) {
+                searchMetrics.increment("cluster.forward-timeouts");
+                log.warn("Owner {} did not answer within {}", owner, forwardTimeout);
+                watch.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("The search operation timed out"));
+                return;
+            }
+            // Only a transport failure (refused, reset, connect timeout) counts against the owner
+            if (cause instanceof IOException) {
+                searchMetrics.increment("cluster.owner-failed");
+                clusterMembership.reportFailure(owner);
+            }
+            log.warn("Could not reach owner {}, serving locally: {}", owner, cause.toString());
+            fallback.run();
+        });
+    }
+
+    private static ResponseEntity<?> relay(HttpResponse<String> ownerResponse) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(ownerResponse.statusCode());
+        ownerResponse.headers().firstValue(HttpHeaders.CONTENT_TYPE).ifPresent(type -> response.header(HttpHeaders.CONTENT_TYPE, type));
+        ownerResponse.headers().firstValue(NEXT_CURSOR_HEADER).ifPresent(cursor -> response.header(NEXT_CURSOR_HEADER, cursor));
+        return response.body(ownerResponse.body());
+    }
+
+    private static ResponseEntity<?> toResponse(ResultSnapshotStore.Page page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.users());
+    }
+
+    private void cancel(Future<?> task, String reason) {
+        if (task.cancel(true)) {
+            searchMetrics.increment("search.cancelled." + reason);
+            log.info("Cancelled in-flight search after {}", reason);
         }
     }
 }
 
+// Controller for the membership heartbeats between search nodes
+@RestController
+@RequestMapping("/api/cluster")
+class ClusterController {
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @GetMapping
+    public Map<String, Object> view() {
+        return clusterMembership.view();
+    }
+
+    @GetMapping("/owner")
+    public String owner(@RequestParam Long orgId) {
+        return clusterMembership.ownerOf(orgId);
+    }
+
+    // A node shutting down answers 503, which is how the others confirm its leave
+    @PostMapping("/heartbeat")
+    public ResponseEntity<List<String>> heartbeat(@RequestParam String from) {
+        if (clusterMembership.leaving()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(clusterMembership.onHeartbeat(from));
+    }
+
+    @PostMapping("/leave")
+    public void leave(@RequestParam String node) {
+        clusterMembership.onLeave(node);
+    }
+}
+
 @Slf4j
 @Service
 class SearchService {
 
+    private static final int MEMORY_RETRIEVE_SIZE = 100;
+    private static final String REFORMAT_PROMPT = """
+            Rewrite the answer below as JSON. Keep exactly the users it mentions and do not add any.
+            %s
+            Answer to rewrite:
+            %s
+            """;
+    private static final String TRAVERSAL_DESCRIPTION = """
+            Follow relationships between users, teams and projects in one call.
+            startType is USER, TEAM or PROJECT; start is a userId for USER, otherwise the team or project name.
+            path is a list of steps out of MEMBER_OF_TEAM (user to team), TEAM_MEMBER (team to user), \
+            WORKS_ON (user to project), PROJECT_MEMBER (project to user), MENTIONS (user to users they mentioned), \
+            MENTIONED_BY (user to users who mentioned them).
+            maxHops limits the number of steps; a single step is repeated up to maxHops times.
+            Example: users working on projects with people user 2 mentioned is \
+            startType=USER, start=2, path=[MENTIONS, WORKS_ON, PROJECT_MEMBER], maxHops=3.
+            """;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private final UserRepository userRepository;
     private final ProjectRepository projectRepository;
     private final TeamRepository teamRepository;
     private final MentionHistoryRepository mentionHistoryRepository;
-    private final ChatModel chatModel;
+    private final ChatMemory chatMemory;
+    private final ModelCascade modelCascade;
+    private final boolean escalateOnEmpty;
+    private final ChatClient chatClient;
+    private final ExecutorService searchExecutor;
+    private final SearchMetrics metrics;
+    private final ResultSnapshotStore resultSnapshotStore;
+    private final int maxResults;
+    private final RelationshipGraph relationshipGraph;
+    private final RequesterContextProvider requesterContextProvider;
+    private final ChatClient formattingClient;
+    private final boolean jsonMode;
 
     @Autowired
     public SearchService(UserRepository userRepository,
                          ProjectRepository projectRepository,
                          TeamRepository teamRepository,
                          MentionHistoryRepository mentionHistoryRepository,
-                         ChatModel chatModel) {
+                         ChatModel chatModel,
+                         ChatMemory chatMemory,
+                         ModelCascade modelCascade,
+                         @Value("${search.cascade.escalate-on-empty:true}") boolean escalateOnEmpty,
+                         ExecutorService searchExecutor,
+                         SearchMetrics metrics,
+                         ResultSnapshotStore resultSnapshotStore,
+                         @Value("${search.pagination.max-results:100}") int maxResults,
+                         RelationshipGraph relationshipGraph,
+                         RequesterContextProvider requesterContextProvider,
+                         @Value("${search.output.json-mode:true}") boolean jsonMode) {
         this.userRepository = userRepository;
         this.projectRepository = projectRepository;
         this.teamRepository = teamRepository;
         this.mentionHistoryRepository = mentionHistoryRepository;
-        this.chatModel = chatModel;
-    }
-
-    public List<User> search(String query, int limit, Long orgId, Long teamId, Long userId) {
-        String contextualizedQuery = constructContextualizedQuery(query, orgId, teamId, userId);
-        log.info("\n\n>> Contextualized query: {}", contextualizedQuery);
-
-        UserMessage userMessage = new UserMessage(contextualizedQuery);
-        var promptOptions = OllamaOptions.builder()
-                .withModel(OllamaModel.LLAMA3_1)
-                .withFunctionCallbacks(List.of(
-                        FunctionCallbackWrapper.builder(this::getUserByUserIdWrapper)
-                                .withName("getUserByUserId")
-                                .withDescription("Get user by userId")
-                                .withInputType(FunctionInputWrappers.UserIdWrapper.class)
-                                .build(),
-                        FunctionCallbackWrapper.builder(this::getUsersByNameWrapper)
-                                .withName("getUsersByName")
-                                .withDescription("Get users by name")
-                                .withInputType(FunctionInputWrappers.NameWrapper.class)
-                                .build(),
-                        FunctionCallbackWrapper.builder(this::getProjectMembersByProjectNameWrapper)
-                                .withName("getProjectMembersByProjectName")
-                                .withDescription("Get project members by project name")
-                                .withInputType(FunctionInputWrappers.ProjectNameWrapper.class)
-                                .build(),
-                        FunctionCallbackWrapper.builder(this::getTeamMembersByTeamNameWrapper)
-                                .withName("getTeamMembersByTeamName")
-                                .withDescription("Get team members by team name")
-                                .withInputType(FunctionInputWrappers.TeamNameWrapper.class)
-                                .build(),
-                        FunctionCallbackWrapper.builder(this::getMentionsByUserWrapper)
-                                .withName("getMentionsByUser")
-                                .withDescription("Get all users that the given user mentions so far")
-                                .withInputType(FunctionInputWrappers.UserIdWrapper.class)
-                                .build()
-                ))
-                .build();
-
-        ChatClient chatClient = ChatClient.builder(chatModel)
+        this.chatMemory = chatMemory;
+        this.modelCascade = modelCascade;
+        this.escalateOnEmpty = escalateOnEmpty;
+        this.searchExecutor = searchExecutor;
+        this.metrics = metrics;
+        this.resultSnapshotStore = resultSnapshotStore;
+        this.maxResults = maxResults;
+        this.relationshipGraph = relationshipGraph;
+        this.requesterContextProvider = requesterContextProvider;
+        this.jsonMode = jsonMode;
+        this.formattingClient = ChatClient.create(chatModel);
+        this.chatClient = ChatClient.builder(chatModel)
                 .defaultSystem("""
                         You are a Search support agent called named "Eagle"."
                         Respond in a friendly, helpful, and joyful manner.
@@ -205,32 +550,180 @@ class SearchService {
                         If you are unable to determine the information requested based on the provided parameters,don't suggest any user.
                         If your response does not contain any user information, return response as "No user found" and explain the reason.
                         If the query is very short, try to use getUsersByName function to find the user.
+                        For questions that chain users, teams, projects and mentions, answer them with a single traverseRelationships call.
+                        Return at most {max_results} users, best matches first.
                         Today is {current_date}.
+
+                        What is already known about the requester; answer questions about them, their team and their mentions from this without calling functions:
+                        {requester_context}
                         """)
-                .defaultAdvisors(
-//                        new PromptChatMemoryAdvisor(chatMemory), // Chat Memory
-                        new LoggingAdvisor())
+                .defaultAdvisors(new LoggingAdvisor())
                 .build();
+    }
 
-        List<User> results = chatClient.prompt()
-                .system(s -> s.param("current_date", LocalDate.now().toString()))
-                .user(contextualizedQuery)
-                .function("getUserByUserId", "Get user by userId", FunctionInputWrappers.UserIdWrapper.class, this::getUserByUserIdWrapper)
-                .function("getUsersByName", "Get users by name", FunctionInputWrappers.NameWrapper.class, this::getUsersByNameWrapper)
-                .function("getProjectMembersByProjectName", "Get project members by project name", FunctionInputWrappers.ProjectNameWrapper.class, this::getProjectMembersByProjectNameWrapper)
-                .function("getTeamMembersByTeamName", "Get team members by team name", FunctionInputWrappers.TeamNameWrapper.class, this::getTeamMembersByTeamNameWrapper)
-                .function("getMentionsByUser", "Get all users that the given user mentions so far", FunctionInputWrappers.UserIdWrapper.class, this::getMentionsByUserWrapper)
-                .call()
-                .entity(new GenericListOutputConverter<>(User.class));
+    public ResultSnapshotStore.Page search(String query, int limit, Long orgId, Long teamId, Long userId, String conversationId) {
+        String contextualizedQuery = constructContextualizedQuery(query, orgId, teamId, userId);
+        log.info("\n\n>> Contextualized query: {}", contextualizedQuery);
+
+        // Follow-up searches share a bounded, summarized history instead of the full transcript
+        List<Message> history = conversationId == null ? List.of() : chatMemory.get(conversationId, MEMORY_RETRIEVE_SIZE);
+
+        String requesterContext = requesterContextProvider.contextBlock(orgId, teamId, userId);
+
+        // Short queries are usually names: look them up while the model starts, and skip the model if that is enough
+        SpeculativeLookup speculation = SpeculativeLookup.startIfShort(query, orgId, maxResults, userRepository, searchExecutor);
+        // Every attempt gets its own context, so users seen by a rejected attempt never reach the later pages
+        Future<Attempt> generation = searchExecutor.submit(() -> modelCascade.run(
+                model -> {
+                    SearchRequestContext context = new SearchRequestContext(limit, orgId, speculation);
+                    return new Attempt(generate(model, contextualizedQuery, history, requesterContext, context), context);
+                },
+                attempt -> validate(attempt.users(), orgId),
+                attempt -> new Attempt(attempt.users().stream().filter(user -> validateUser(user, orgId) == null).toList(),
+                        attempt.context())));
+
+        User speculativeMatch = speculation == null ? null : speculation.unambiguousMatch();
+        Attempt accepted;
+        if (speculativeMatch != null) {
+            generation.cancel(true);
+            metrics.increment("speculation.hits");
+            accepted = new Attempt(List.of(speculativeMatch), new SearchRequestContext(limit, orgId, null));
+        } else {
+            if (speculation != null) {
+                metrics.increment("speculation.misses");
+            }
+            accepted = await(generation);
+        }
+        List<User> results = accepted.users();
 
         log.info("\n\n>> Structured response: {} \n\n", results);
 
-        var response = chatModel.call(new Prompt(userMessage, promptOptions));
-        log.info("\n\n>> normal response: {} \n\n", response.getResult().getOutput());
+        if (conversationId != null) {
+            // Only the accepted answer is remembered, not the ones the cascade rejected
+            chatMemory.add(conversationId, List.of(new UserMessage(contextualizedQuery), new AssistantMessage(toJson(results))));
+        }
 
-        List<User> filteredResults = filterResults(results, orgId, teamId, userId);
+        List<User> filteredResults = filterResults(results, orgId);
 
-        return filteredResults.stream().limit(limit).toList();
+        // The first page is exactly the answer; the pages after it are the accepted attempt's other tool output, unranked
+        return resultSnapshotStore.firstPage(filteredResults, accepted.context().remainder(filteredResults), limit, orgId);
+    }
+
+    /**
+     * Serves a later page of an earlier search from its snapshot, or returns null if the cursor is no longer valid.
+     */
+    public ResultSnapshotStore.Page nextPage(String cursor, int limit, Long orgId) {
+        return resultSnapshotStore.page(cursor, limit, orgId);
+    }
+
+    private Attempt await(Future<Attempt> generation) {
+        try {
+            return generation.get();
+        } catch (InterruptedException e) {
+            generation.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Search was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    /**
+     * One model's answer together with the users its tool calls returned.
+     */
+    private record Attempt(List<User> users, SearchRequestContext context) {
+    }
+
+    private List<User> generate(String model, String contextualizedQuery, List<Message> history, String requesterContext,
+                                SearchRequestContext context) {
+        GenericListOutputConverter<User> converter = new GenericListOutputConverter<>(User.class, context.limit());
+        String answer = chatClient.prompt()
+                .options(outputOptions(model))
+                .system(s -> s.param("current_date", LocalDate.now().toString())
+                        .param("max_results", context.limit())
+                        .param("requester_context", requesterContext))
+                .messages(history)
+                .user(contextualizedQuery + System.lineSeparator() + converter.getFormat())
+                .function("getUserByUserId", "Get user by userId", FunctionInputWrappers.UserIdWrapper.class, wrapper -> getUserByUserIdWrapper(wrapper, context))
+                .function("getUsersByName", "Get users by name", FunctionInputWrappers.NameWrapper.class, wrapper -> getUsersByNameWrapper(wrapper, context))
+                .function("getProjectMembersByProjectName", "Get project members by project name", FunctionInputWrappers.ProjectNameWrapper.class, wrapper -> getProjectMembersByProjectNameWrapper(wrapper, context))
+                .function("getTeamMembersByTeamName", "Get team members by team name", FunctionInputWrappers.TeamNameWrapper.class, wrapper -> getTeamMembersByTeamNameWrapper(wrapper, context))
+                .function("getMentionsByUser", "Get the most recent users that the given user mentions so far", FunctionInputWrappers.UserIdWrapper.class, wrapper -> getMentionsByUserWrapper(wrapper, context))
+                .function("traverseRelationships", TRAVERSAL_DESCRIPTION, FunctionInputWrappers.TraversalWrapper.class, wrapper -> traverseRelationshipsWrapper(wrapper, context))
+                .call()
+                .content();
+        return parseAnswer(model, answer, converter);
+    }
+
+    // Parse as is, then repair locally, and only then pay for one reformatting call without tools
+    private List<User> parseAnswer(String model, String answer, GenericListOutputConverter<User> converter) {
+        GenericListOutputConverter.Conversion<User> conversion = converter.convertWithRepair(answer);
+        if (conversion != null) {
+            metrics.increment(conversion.repaired() ? "output.repaired" : "output.parsed");
+            return conversion.values();
+        }
+
+        metrics.increment("output.retried");
+        log.info("Answer of model {} is not valid JSON, asking it to reformat: {}", model, answer);
+        String reformatted = formattingClient.prompt()
+                .options(outputOptions(model))
+                .user(REFORMAT_PROMPT.formatted(converter.getFormat(), answer))
+                .call()
+                .content();
+        conversion = converter.convertWithRepair(reformatted);
+        if (conversion != null) {
+            metrics.increment("output.retry-parsed");
+            return conversion.values();
+        }
+
+        metrics.increment("output.failed");
+        throw new IllegalStateException("Model " + model + " did not produce a parseable user list: " + answer);
+    }
+
+    private OllamaOptions outputOptions(String model) {
+        OllamaOptions options = OllamaOptions.builder().withModel(model).build();
+        if (jsonMode) {
+            // Ollama constrains sampling to a JSON grammar in this mode
+            options.setFormat("json");
+        }
+        return options;
+    }
+
+    // Returns why the answer should be escalated to a larger model, or null if it can be served
+    private String validate(List<User> answer, Long orgId) {
+        if (answer.isEmpty() && escalateOnEmpty) {
+            return "no users returned";
+        }
+        return answer.stream()
+                .map(user -> validateUser(user, orgId))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private String validateUser(User user, Long orgId) {
+        User known = userRepository.getUserByUserId(user.userId());
+        if (known == null) {
+            return "unknown userId " + user.userId();
+        }
+        if (!known.name().equalsIgnoreCase(user.name())) {
+            return "name '" + user.name() + "' does not match userId " + user.userId();
+        }
+        if (orgId != null && known.orgId() != orgId) {
+            return "userId " + user.userId() + " is outside organization " + orgId;
+        }
+        return null;
+    }
+
+    private String toJson(List<User> users) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(users);
+        } catch (JsonProcessingException e) {
+            return users.toString();
+        }
     }
 
     private String constructContextualizedQuery(String query, Long orgId, Long teamId, Long userId) {
@@ -258,13 +751,14 @@ class SearchService {
         return new ArrayList<>(); // Placeholder
     }
 
-    private List<User> filterResults(List<User> users, long orgId, long teamId, long userId) {
+    // teamId and userId describe the requester, not the result, so only the org restricts the answer
+    private List<User> filterResults(List<User> users, Long orgId) {
         ObjectMapper objectMapper = new ObjectMapper();
         List<User> userList = objectMapper.convertValue(users, new TypeReference<>() {
         });
 
         List<User> result = userList.stream()
-                .filter(user -> orgId == 0 || user.orgId() == orgId)
+                .filter(user -> orgId == null || user.orgId() == orgId)
                 .toList();
 
         if (userList.size() != result.size()) {
@@ -274,30 +768,68 @@ class SearchService {
         return result;
     }
 
-    // Function callback wrappers
-    private User getUserByUserIdWrapper(FunctionInputWrappers.UserIdWrapper wrapper) {
+    // Function callback wrappers; each returns at most the requested number of users of the requested organization
+    private User getUserByUserIdWrapper(FunctionInputWrappers.UserIdWrapper wrapper, SearchRequestContext context) {
         log.debug("Calling getUserByUserId with userId: {}", wrapper.userId);
-        return userRepository.getUserByUserId(wrapper.userId);
+        User user = userRepository.getUserByUserId(wrapper.userId);
+        context.remember(user);
+        return context.inScope(user) ? user : null;
     }
 
-    private List<User> getUsersByNameWrapper(FunctionInputWrappers.NameWrapper wrapper) {
+    private List<User> getUsersByNameWrapper(FunctionInputWrappers.NameWrapper wrapper, SearchRequestContext context) {
         log.debug("Calling getUsersByName with name: {}", wrapper.name);
-        return userRepository.getUsersByName(wrapper.name);
+        SpeculativeLookup speculation = context.speculation();
+        List<User> precomputed = speculation == null ? null : speculation.resultFor(wrapper.name);
+        if (precomputed != null) {
+            metrics.increment("speculation.tool-reuse");
+            return context.topK(precomputed);
+        }
+        return context.topK(userRepository.getUsersByName(wrapper.name, context.orgId(), maxResults));
     }
 
-    private List<User> getProjectMembersByProjectNameWrapper(FunctionInputWrappers.ProjectNameWrapper wrapper) {
+    private List<User> getProjectMembersByProjectNameWrapper(FunctionInputWrappers.ProjectNameWrapper wrapper, SearchRequestContext context) {
         log.debug("Calling getProjectMembersByProjectName with projectName: {}", wrapper.projectName);
-        return projectRepository.getProjectMembersByProjectName(wrapper.projectName);
+        return context.topK(projectRepository.getProjectMembersByProjectName(wrapper.projectName));
     }
 
-    private List<User> getTeamMembersByTeamNameWrapper(FunctionInputWrappers.TeamNameWrapper wrapper) {
+    private List<User> getTeamMembersByTeamNameWrapper(FunctionInputWrappers.TeamNameWrapper wrapper, SearchRequestContext context) {
         log.debug("Calling getTeamMembersByTeamName with teamName: {}", wrapper.teamName);
-        return teamRepository.getTeamMembersByTeamName(wrapper.teamName);
+        return context.topK(teamRepository.getTeamMembersByTeamName(wrapper.teamName));
     }
 
-    private List<MentionHistory> getMentionsByUserWrapper(FunctionInputWrappers.UserIdWrapper wrapper) {
+    private List<MentionHistory> getMentionsByUserWrapper(FunctionInputWrappers.UserIdWrapper wrapper, SearchRequestContext context) {
         log.debug("Calling getMentionsByUser with userId: {}", wrapper.userId);
-        return mentionHistoryRepository.getMentionsByUser(wrapper.userId);
+        List<MentionHistory> mentions = mentionHistoryRepository.getMentionsByUser(wrapper.userId).stream()
+                .sorted(Comparator.comparing(MentionHistory::timePeriod).reversed())
+                .toList();
+        // Mentioned users beyond the first page are resolved here so that later pages can include them
+        mentions.stream().skip(context.limit())
+                .forEach(mention -> context.remember(userRepository.getUserByUserId(mention.mentionedUserId())));
+        return mentions.stream().limit(context.limit()).toList();
+    }
+
+    private RelationshipGraph.TraversalResult traverseRelationshipsWrapper(FunctionInputWrappers.TraversalWrapper wrapper, SearchRequestContext context) {
+        log.debug("Calling traverseRelationships from {} {} along {} within {} hops", wrapper.startType, wrapper.start, wrapper.path, wrapper.maxHops);
+        RelationshipGraph.TraversalResult empty = new RelationshipGraph.TraversalResult(List.of(), List.of(), List.of());
+        if (wrapper.startType == null || wrapper.start == null || wrapper.path == null || wrapper.path.stream().anyMatch(Objects::isNull)) {
+            log.debug("Missing traverseRelationships arguments");
+            return empty;
+        }
+        RelationshipGraph.NodeType startType;
+        List<RelationshipGraph.EdgeType> path;
+        try {
+            startType = RelationshipGraph.NodeType.valueOf(wrapper.startType.strip().toUpperCase());
+            path = wrapper.path.stream()
+                    .map(step -> RelationshipGraph.EdgeType.valueOf(step.strip().toUpperCase()))
+                    .toList();
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid traverseRelationships arguments: {}", e.getMessage());
+            return empty;
+        }
+        int maxHops = wrapper.maxHops == null ? path.size() : wrapper.maxHops;
+        RelationshipGraph.TraversalResult result = relationshipGraph.traverse(startType, wrapper.start, path, maxHops,
+                maxResults, context.orgId());
+        return new RelationshipGraph.TraversalResult(context.topK(result.users()), result.teams(), result.projects());
     }
 }
 
@@ -317,6 +849,13 @@ class FunctionInputWrappers {
     public static class TeamNameWrapper {
         public String teamName;
     }
+
+    public static class TraversalWrapper {
+        public String startType;
+        public String start;
+        public List<String> path;
+        public Integer maxHops;
+    }
 }
 
 // Service for generating embeddings using Ollama
@@ -350,10 +889,12 @@ class OllamaEmbeddingService {
     }
 }
 
-// A repository simulating a database of users
+// A repository of users, loaded from the snapshot or the sample data and served from the configured UserDirectory
 @Service
 class UserRepository {
-    private final List<User> users = List.of(
+    private static final int MAX_NAME_MATCHES = 100;
+
+    static final List<User> sampleUsers = List.of(
             new User(1, "John Doe", "john@techhub.com", 1, 10),
             new User(2, "Jane Smith", "jane.s@techhub.com", 1, 10),
             new User(3, "Robert Brown", "robert.brown@techhub.com", 1, 10),
@@ -390,24 +931,44 @@ class UserRepository {
             new User(30, "Elizabeth Campbell", "elizabeth.cam@nexustech.io", 7, 50)
     );
 
+    private final List<User> users;
+    private final ColumnarSnapshot snapshot;
+    private final UserDirectory userDirectory;
+
+    UserRepository(UserDirectory userDirectory, ObjectProvider<ColumnarSnapshot> snapshot) {
+        this.snapshot = snapshot.getIfAvailable();
+        this.users = this.snapshot != null ? this.snapshot.users() : sampleUsers;
+        this.userDirectory = userDirectory;
+        // A persistent index survives restarts; reindex only when it was built from other users
+        String version = Long.toHexString(this.snapshot != null
+                ? this.snapshot.usersChecksum()
+                : ColumnarSnapshotWriter.usersChecksum(sampleUsers));
+        if (!version.equals(userDirectory.indexedVersion())) {
+            userDirectory.replaceAll(users, version);
+        }
+    }
+
+    public List<User> getAllUsers() {
+        return users;
+    }
+
     public List<User> getUsersByName(String name) {
-        return users.stream()
-                .filter(user -> user.name().toLowerCase().contains(name.toLowerCase()) ||
-                        user.email().toLowerCase().contains(name.toLowerCase()))
-                .toList();
+        return getUsersByName(name, null, MAX_NAME_MATCHES);
+    }
+
+    public List<User> getUsersByName(String name, Long orgId, int limit) {
+        return userDirectory.searchByName(name, orgId, limit);
     }
 
     public User getUserByUserId(Long userId) {
-        return users.stream()
-                .filter(user -> user.userId() == userId)
-                .findFirst()
-                .orElse(null);
+        if (snapshot != null) {
+            return userId == null ? null : snapshot.getUser(userId);
+        }
+        return userDirectory.findById(userId);
     }
 
     public List<User> getUsersByTeamId(Long teamId) {
-        return users.stream()
-                .filter(user -> user.teamId() == teamId)
-                .toList();
+        return userDirectory.findByTeamId(teamId);
     }
 }
 
@@ -415,22 +976,29 @@ class UserRepository {
 @Service
 class ProjectRepository {
 
-    private static final Map<String, List<Long>> projects = Map.of(
+    static final Map<String, List<Long>> projects = Map.of(
             "Mars", Arrays.asList(3L, 1L, 2L),
             "Eagle Eye", Arrays.asList(4L, 5L));
 
     private final UserRepository userRepository;
+    private final Map<String, List<Long>> projectMembers;
 
-    public ProjectRepository(UserRepository userRepository) {
+    public ProjectRepository(UserRepository userRepository, ObjectProvider<ColumnarSnapshot> snapshot) {
         this.userRepository = userRepository;
+        ColumnarSnapshot columnarSnapshot = snapshot.getIfAvailable();
+        this.projectMembers = columnarSnapshot != null ? columnarSnapshot.projects() : projects;
+    }
+
+    public Map<String, List<Long>> getProjects() {
+        return projectMembers;
     }
 
     public List<Long> findUsersByProjectName(String projectName) {
-        return projects.getOrDefault(projectName, Collections.emptyList());
+        return projectMembers.getOrDefault(projectName, Collections.emptyList());
     }
 
     public List<User> getProjectMembersByProjectName(String prjName) {
-        return projects.entrySet().stream()
+        return projectMembers.entrySet().stream()
                 .filter(entry -> entry.getKey().toLowerCase().contains(prjName.toLowerCase()))
                 .flatMap(entry -> entry.getValue().stream())
 
@@ -443,21 +1011,28 @@ class ProjectRepository {
 @Service
 class TeamRepository {
 
-    private static final Map<Long, String> Teams = Map.of(
+    static final Map<Long, String> Teams = Map.of(
             1L,"Alpha",
             2L,"Beta");
     private final UserRepository userRepository;
+    private final Map<Long, String> teams;
 
-    TeamRepository(UserRepository userRepository) {
+    TeamRepository(UserRepository userRepository, ObjectProvider<ColumnarSnapshot> snapshot) {
         this.userRepository = userRepository;
+        ColumnarSnapshot columnarSnapshot = snapshot.getIfAvailable();
+        this.teams = columnarSnapshot != null ? columnarSnapshot.teams() : Teams;
+    }
+
+    public Map<Long, String> getTeams() {
+        return teams;
     }
 
     public String getTeamNameById(Long teamId) {
-        return Teams.get(teamId);
+        return teams.get(teamId);
     }
 
     public List<User> getTeamMembersByTeamName(String teamName) {
-        return Teams.entrySet().stream()
+        return teams.entrySet().stream()
                 .filter(entry -> entry.getValue().toLowerCase().contains(teamName.toLowerCase()))
                 .map(Map.Entry::getKey)
                 .map(userRepository::getUsersByTeamId)
@@ -469,7 +1044,7 @@ class TeamRepository {
 // A repository simulating a database of Mentions
 @Service
 class MentionHistoryRepository {
-    private static final List<MentionHistory> mentionHistory = new ArrayList<>(Arrays.asList(
+    static final List<MentionHistory> mentionHistory = new ArrayList<>(Arrays.asList(
             new MentionHistory(1, 2, LocalDate.now().minusDays(1)),
             new MentionHistory(1, 3, LocalDate.now().minusDays(2)),
             new MentionHistory(1, 5, LocalDate.now().minusDays(2)),
@@ -481,12 +1056,21 @@ class MentionHistoryRepository {
     ));
 
     private final UserRepository userRepository;
+    private final ColumnarSnapshot snapshot;
 
-    MentionHistoryRepository(UserRepository userRepository) {
+    MentionHistoryRepository(UserRepository userRepository, ObjectProvider<ColumnarSnapshot> snapshot) {
         this.userRepository = userRepository;
+        this.snapshot = snapshot.getIfAvailable();
+    }
+
+    public List<MentionHistory> getAllMentions() {
+        return snapshot != null ? snapshot.mentions() : Collections.unmodifiableList(mentionHistory);
     }
 
     public List<MentionHistory> getMentionsByUser(long userId) {
+        if (snapshot != null) {
+            return snapshot.mentionsByUser(userId);
+        }
         return mentionHistory.stream()
                 .filter(mention -> mention.userId() == userId)
                 .toList();
@@ -532,37 +1116,88 @@ class UserListOutputConverter implements StructuredOutputConverter<List<User>> {
 }
 
 class GenericListOutputConverter<V> implements StructuredOutputConverter<List<V>> {
+    // Schema generation is reflective and costly; the schema of a type never changes
+    private static final Map<Class<?>, String> SCHEMAS = new ConcurrentHashMap<>();
+
     private final ObjectMapper objectMapper;
+    private final ObjectMapper lenientObjectMapper;
     private final String jsonSchema;
-    private final TypeReference<List<V>> typeRef;
+    private final JavaType listType;
     private final Class<V> valueType;
+    private final Set<String> valueFields;
+    private final Integer maxItems;
 
     public GenericListOutputConverter(Class<V> valueType) {
+        this(valueType, null);
+    }
+
+    public GenericListOutputConverter(Class<V> valueType, Integer maxItems) {
+        this.maxItems = maxItems;
         this.objectMapper = createObjectMapper();
-        this.typeRef = new TypeReference<>() {
-        };
-        this.jsonSchema = generateJsonSchemaForValueType(valueType);
+        this.lenientObjectMapper = createObjectMapper().rebuild()
+                .enable(JsonReadFeature.ALLOW_TRAILING_COMMA, JsonReadFeature.ALLOW_SINGLE_QUOTES,
+                        JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES, JsonReadFeature.ALLOW_JAVA_COMMENTS)
+                .build();
+        this.listType = objectMapper.getTypeFactory().constructCollectionType(List.class, valueType);
+        this.jsonSchema = SCHEMAS.computeIfAbsent(valueType, this::generateJsonSchemaForValueType);
         this.valueType = valueType;
+        this.valueFields = objectMapper.getDeserializationConfig().introspect(objectMapper.constructType(valueType))
+                .findProperties().stream()
+                .map(BeanPropertyDefinition::getName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    record Conversion<V>(List<V> values, boolean repaired) {
     }
 
     @Override
     public List<V> convert(@NonNull String text) {
+        Conversion<V> conversion = convertWithRepair(text);
+        if (conversion == null) {
+            throw new RuntimeException("Failed to convert JSON to List<V>. Json= " + text);
+        }
+        return conversion.values();
+    }
+
+    /**
+     * Parses the text as it is and, failing that, after a local repair pass.
+     * Returns null for a null text or if neither works, leaving it to the caller to decide whether a retry is worth it.
+     */
+    public Conversion<V> convertWithRepair(String text) {
+        if (text == null) {
+            return null;
+        }
+        List<V> values = tryParse(objectMapper, trimMarkdown(text), false);
+        if (values != null) {
+            return new Conversion<>(values, false);
+        }
+        String repaired = JsonRepair.repair(text);
+        values = repaired == null ? null : tryParse(lenientObjectMapper, repaired, true);
+        return values == null ? null : new Conversion<>(values, true);
+    }
+
+    private List<V> tryParse(ObjectMapper mapper, String json, boolean acceptSingleElement) {
         try {
-            String trimmedText = trimMarkdown(text);
-            JsonNode jsonNode = objectMapper.readTree(trimmedText);
+            JsonNode jsonNode = mapper.readTree(json);
+            if (jsonNode == null || jsonNode.isMissingNode()) {
+                return null;
+            }
 
             // Check if the JSON is an object with a single array field
-            if (jsonNode.isObject() && jsonNode.size() == 1) {
-                JsonNode arrayNode = jsonNode.elements().next();
-                if (arrayNode.isArray()) {
-                    return objectMapper.convertValue(arrayNode, typeRef);
-                }
+            if (jsonNode.isObject() && jsonNode.size() == 1 && jsonNode.elements().next().isArray()) {
+                return mapper.convertValue(jsonNode.elements().next(), listType);
             }
-
-            // If it's not the special case, try to parse it as a direct array
-            return objectMapper.readValue(trimmedText, typeRef);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to convert JSON to List<V>. Json= " + text, e);
+            if (jsonNode.isArray()) {
+                return mapper.convertValue(jsonNode, listType);
+            }
+            if (acceptSingleElement && jsonNode.isObject() && !jsonNode.isEmpty()) {
+                // An object without any field of the value type is a message such as {"response": "No user found"}
+                boolean hasValueField = valueFields.stream().anyMatch(jsonNode::has);
+                return hasValueField ? List.of(mapper.convertValue(jsonNode, valueType)) : List.of();
+            }
+            return null;
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return null;
         }
     }
 
@@ -577,10 +1212,11 @@ class GenericListOutputConverter<V> implements StructuredOutputConverter<List<V>
                 %s
                 ```
                 Do not include any explanations, only provide a RFC8259 compliant JSON response following this format without deviation.
-                """, valueType.getSimpleName(), getExampleJson(), getExampleJson(), this.jsonSchema);
+                """, valueType.getSimpleName(), getExampleJson(), getExampleJson(), this.jsonSchema)
+                + (maxItems == null ? "" : "The array must contain at most " + maxItems + " elements.\n");
     }
 
-    private ObjectMapper createObjectMapper() {
+    private JsonMapper createObjectMapper() {
         return JsonMapper.builder()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
                 .defaultDateFormat(new StdDateFormat().withColonInTimeZone(true))
@@ -591,7 +1227,7 @@ class GenericListOutputConverter<V> implements StructuredOutputConverter<List<V>
         return text.replaceAll("^```json\\s*|\\s*```$", "").trim();
     }
 
-    private String generateJsonSchemaForValueType(Class<V> valueType) {
+    private String generateJsonSchemaForValueType(Class<?> valueType) {
         try {
             SchemaGeneratorConfig config = new SchemaGeneratorConfigBuilder(SchemaVersion.DRAFT_2020_12, OptionPreset.PLAIN_JSON)
                     .with(new JacksonModule())
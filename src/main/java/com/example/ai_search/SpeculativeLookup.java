@@ -0,0 +1,87 @@
+package com.example.ai_search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@code getUsersByName} lookup started for a short query at the same time as the model call.
+ * <p>
+ * Either it finds exactly one in-scope user, in which case the model call can be dropped, or its result is
+ * handed to the model's {@code getUsersByName} tool call when the model asks for the same name. The lookup runs
+ * the same org-scoped, capped directory query as that tool, so both see the same result set.
+ */
+final class SpeculativeLookup {
+
+    private static final int MAX_WORDS = 3;
+    private static final int MAX_CHARS = 40;
+
+    private final String name;
+    private final CompletableFuture<List<User>> result;
+
+    private SpeculativeLookup(String name, CompletableFuture<List<User>> result) {
+        this.name = name;
+        this.result = result;
+    }
+
+    /**
+     * Starts the lookup if the query is short enough to plausibly be a name, otherwise returns {@code null}.
+     *
+     * @param orgId restricts the lookup to one organization, or {@code null} for all
+     * @param limit the most users to fetch, as for the {@code getUsersByName} tool
+     */
+    static SpeculativeLookup startIfShort(String query, Long orgId, int limit, UserRepository userRepository, Executor executor) {
+        String name = normalize(query);
+        if (name.isEmpty() || name.length() > MAX_CHARS || words(name).length > MAX_WORDS) {
+            return null;
+        }
+        return new SpeculativeLookup(name,
+                CompletableFuture.supplyAsync(() -> userRepository.getUsersByName(name, orgId, limit), executor));
+    }
+
+    /**
+     * Waits for the lookup and returns the only user in the organization whose name or email starts with
+     * every word of the query, or {@code null} if there is none or more than one.
+     */
+    User unambiguousMatch() {
+        List<User> inScope;
+        try {
+            inScope = result.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+        if (inScope.size() != 1) {
+            return null;
+        }
+        User candidate = inScope.get(0);
+        List<String> candidateWords = Arrays.asList(words(normalize(candidate.name() + " " + candidate.email().replace('.', ' '))));
+        boolean matchesAllWords = Arrays.stream(words(name))
+                .allMatch(word -> candidateWords.stream().anyMatch(candidateWord -> candidateWord.startsWith(word)));
+        return matchesAllWords ? candidate : null;
+    }
+
+    /**
+     * Returns the precomputed result if the tool call asks for the name this lookup ran for, otherwise {@code null}.
+     */
+    List<User> resultFor(String requestedName) {
+        if (requestedName == null || !name.equals(normalize(requestedName))) {
+            return null;
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}@.]+", " ").trim();
+    }
+
+    private static String[] words(String text) {
+        return text.split(" ");
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.ai_search;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records how long after JVM start the application became ready and served its first successful search, as
+ * {@code startup.ready} and {@code startup.first-search} in {@link SearchMetrics}, to track scale-out latency.
+ * Other requests are ignored: health checks, heartbeats and metrics polls arrive long before real traffic.
+ */
+@Slf4j
+@Component
+class StartupTimer extends OncePerRequestFilter {
+
+    private static final String SEARCH_PATH = "/api/search";
+
+    private final SearchMetrics metrics;
+    private final AtomicBoolean firstSearchServed = new AtomicBoolean();
+
+    StartupTimer(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @EventListener
+    void onReady(ApplicationReadyEvent event) {
+        long uptime = uptimeMillis();
+        metrics.recordNanos("startup.ready", TimeUnit.MILLISECONDS.toNanos(uptime));
+        log.info("Ready {} ms after JVM start, context refresh took {} ms", uptime, event.getTimeTaken().toMillis());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return firstSearchServed.get() || !SEARCH_PATH.equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        filterChain.doFilter(request, response);
+        // Searches answer through a DeferredResult, so they usually complete after the filter chain returns
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    searchCompleted(response);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            searchCompleted(response);
+        }
+    }
+
+    private void searchCompleted(HttpServletResponse response) {
+        // Rejected and timed-out searches do not count as served
+        if (response.getStatus() < 300 && firstSearchServed.compareAndSet(false, true)) {
+            long uptime = uptimeMillis();
+            metrics.recordNanos("startup.first-search", TimeUnit.MILLISECONDS.toNanos(uptime));
+            log.info("First search served {} ms after JVM start", uptime);
+        }
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.ai_search;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Searchable store of users. {@link UserRepository} and the search tools query users only through this interface,
+ * so the embedded index can be swapped for a cluster without touching them.
+ */
+public interface UserDirectory extends AutoCloseable {
+
+    /**
+     * Adds or replaces the given users, keyed by userId, and makes them visible to subsequent searches.
+     */
+    void indexAll(Collection<User> users);
+
+    /**
+     * Replaces every user in the directory with the given ones and records {@code version} as the version they
+     * were built from.
+     */
+    void replaceAll(Collection<User> users, String version);
+
+    /**
+     * The version recorded by the last {@link #replaceAll}, or {@code null} if there is none.
+     */
+    String indexedVersion();
+
+    User findById(long userId);
+
+    /**
+     * Prefix and fuzzy match on name and email terms, best matches first.
+     *
+     * @param orgId restricts the result to one organization, or {@code null} for all
+     */
+    List<User> searchByName(String name, Long orgId, int limit);
+
+    List<User> findByTeamId(long teamId);
+
+    long count();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,90 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link UserDirectory} backend must share, run against the sample users.
+ */
+abstract class AbstractUserDirectoryTest {
+
+	private UserDirectory directory;
+
+	protected abstract UserDirectory createDirectory() throws Exception;
+
+	@BeforeEach
+	void indexSampleUsers() throws Exception {
+		directory = createDirectory();
+		directory.indexAll(UserRepository.sampleUsers);
+	}
+
+	@AfterEach
+	void closeDirectory() {
+		directory.close();
+	}
+
+	@Test
+	void countsIndexedUsersOncePerUserId() {
+		assertEquals(UserRepository.sampleUsers.size(), directory.count());
+
+		directory.indexAll(UserRepository.sampleUsers);
+		assertEquals(UserRepository.sampleUsers.size(), directory.count());
+	}
+
+	@Test
+	void replacesUsersAndRecordsVersion() {
+		assertNull(directory.indexedVersion());
+
+		directory.replaceAll(List.of(new User(31, "Nora Quinn", "nora.quinn@techhub.com", 1, 10)), "v2");
+
+		assertEquals("v2", directory.indexedVersion());
+		assertEquals(1, directory.count());
+		assertNull(directory.findById(7));
+		assertEquals(List.of(31L), userIds(directory.searchByName("Nora", null, 10)));
+	}
+
+	@Test
+	void findsUserById() {
+		assertEquals(new User(7, "David Lee", "david.lee@globalcorp.com", 3, 20), directory.findById(7));
+		assertNull(directory.findById(999));
+	}
+
+	@Test
+	void matchesNamePrefix() {
+		assertEquals(List.of(3L), userIds(directory.searchByName("Rob", null, 10)));
+	}
+
+	@Test
+	void matchesMisspelledName() {
+		assertTrue(userIds(directory.searchByName("Smiht", null, 10)).contains(2L));
+	}
+
+	@Test
+	void filtersByOrg() {
+		// Robert Brown is in org 10, Olivia Brown in org 20
+		assertEquals(List.of(12L), userIds(directory.searchByName("Brown", 20L, 10)));
+		assertTrue(userIds(directory.searchByName("Brown", null, 10)).containsAll(List.of(3L, 12L)));
+	}
+
+	@Test
+	void respectsLimit() {
+		assertEquals(2, directory.searchByName("a", 30L, 2).size());
+	}
+
+	@Test
+	void findsUsersByTeam() {
+		assertEquals(List.of(14L, 15L, 16L, 17L, 18L, 19L, 20L),
+				userIds(directory.findByTeamId(5)).stream().sorted().toList());
+	}
+
+	private static List<Long> userIds(List<User> users) {
+		return users.stream().map(User::userId).toList();
+	}
+}
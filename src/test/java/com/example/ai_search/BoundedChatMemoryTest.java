@@ -0,0 +1,174 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedChatMemoryTest {
+
+	private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+	// 40 characters: 4 + 10 = 14 estimated tokens
+	private static final String TURN = "The quick brown fox jumps over the dog. ";
+
+	private final MutableClock clock = new MutableClock();
+
+	private BoundedChatMemory memory;
+
+	@AfterEach
+	void close() {
+		if (memory != null) {
+			memory.close();
+		}
+	}
+
+	@Test
+	void foldsOldestTurnsIntoSummaryWhenBudgetIsExceeded() {
+		memory = memory(100, 10_000, null);
+
+		for (int i = 0; i < 10; i++) {
+			memory.add("c", List.of(new UserMessage(i + " " + TURN)));
+		}
+
+		List<Message> messages = memory.get("c", 100);
+		assertInstanceOf(SystemMessage.class, messages.get(0));
+		assertTrue(messages.get(0).getContent().startsWith("Summary of earlier conversation: "));
+		assertEquals("9 " + TURN, messages.get(messages.size() - 1).getContent());
+		assertTrue(messages.size() < 11, "old turns should have been folded");
+		assertTrue(memory.getTotalTokens() <= 100, "tokens " + memory.getTotalTokens());
+	}
+
+	@Test
+	void keepsGlobalTokenCountAcrossConversations() {
+		memory = memory(1_000, 10_000, null);
+
+		memory.add("a", List.of(new UserMessage(TURN)));
+		memory.add("b", List.of(new UserMessage(TURN), new AssistantMessage(TURN)));
+		assertEquals(3L * BoundedChatMemory.estimateTokens(TURN), memory.getTotalTokens());
+
+		memory.clear("b");
+		assertEquals(BoundedChatMemory.estimateTokens(TURN), memory.getTotalTokens());
+		assertEquals(1, memory.getConversationCount());
+	}
+
+	@Test
+	void evictsIdleConversations() {
+		memory = memory(1_000, 10_000, null);
+
+		memory.add("old", List.of(new UserMessage(TURN)));
+		clock.advance(IDLE_TIMEOUT.plusSeconds(1));
+		memory.add("fresh", List.of(new UserMessage(TURN)));
+
+		memory.evictIdle();
+
+		assertEquals(1, memory.getConversationCount());
+		assertEquals(BoundedChatMemory.estimateTokens(TURN), memory.getTotalTokens());
+		assertEquals(List.of(), memory.get("old", 10));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedConversationOverGlobalBudget() {
+		memory = memory(100, 100, null);
+
+		List<Message> turns = List.of(new UserMessage(TURN), new UserMessage(TURN), new UserMessage(TURN), new UserMessage(TURN));
+		memory.add("a", turns);
+		clock.advance(Duration.ofSeconds(1));
+		memory.add("b", turns);
+
+		assertEquals(1, memory.getConversationCount());
+		assertTrue(memory.getTotalTokens() <= 100);
+		assertEquals(4, memory.get("b", 10).size());
+	}
+
+	@Test
+	void replaysEvictedConversationFromLog(@TempDir Path logDirectory) {
+		memory = memory(1_000, 10_000, logDirectory);
+
+		memory.add("c", List.of(new UserMessage("Who is John?"), new AssistantMessage("John Doe, userId 1.")));
+		clock.advance(IDLE_TIMEOUT.plusSeconds(1));
+		memory.evictIdle();
+		assertEquals(0, memory.getConversationCount());
+		assertEquals(0, memory.getTotalTokens());
+
+		List<Message> replayed = memory.get("c", 10);
+		assertEquals(2, replayed.size());
+		assertInstanceOf(UserMessage.class, replayed.get(0));
+		assertEquals("John Doe, userId 1.", replayed.get(1).getContent());
+		assertEquals(BoundedChatMemory.estimateTokens("Who is John?") + BoundedChatMemory.estimateTokens("John Doe, userId 1."),
+				memory.getTotalTokens());
+	}
+
+	@Test
+	void compactsOversizedLogOnReplay(@TempDir Path logDirectory) throws Exception {
+		memory = memory(60, 10_000, logDirectory);
+		for (int i = 0; i < 20; i++) {
+			memory.add("c", List.of(new UserMessage(i + " " + TURN)));
+		}
+		Path log = logDirectory.resolve(Base64.getUrlEncoder().withoutPadding()
+				.encodeToString("c".getBytes(StandardCharsets.UTF_8)) + ".log");
+		long sizeBefore = Files.size(log);
+		assertTrue(sizeBefore > 16L * 60);
+
+		clock.advance(IDLE_TIMEOUT.plusSeconds(1));
+		memory.evictIdle();
+		List<Message> replayed = memory.get("c", 100);
+
+		assertTrue(Files.size(log) < sizeBefore, "log should have been rewritten");
+		assertInstanceOf(SystemMessage.class, replayed.get(0));
+		assertEquals("19 " + TURN, replayed.get(replayed.size() - 1).getContent());
+		assertTrue(memory.getTotalTokens() <= 60);
+
+		// The rewritten log replays to the same state
+		clock.advance(IDLE_TIMEOUT.plusSeconds(1));
+		memory.evictIdle();
+		assertEquals(replayed.stream().map(Message::getContent).toList(),
+				memory.get("c", 100).stream().map(Message::getContent).toList());
+	}
+
+	private BoundedChatMemory memory(int conversationBudget, long globalBudget, Path logDirectory) {
+		return new BoundedChatMemory(conversationBudget, globalBudget, IDLE_TIMEOUT,
+				BoundedChatMemory.ConversationSummarizer.extractive(), logDirectory, clock);
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+		void advance(Duration duration) {
+			now = now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
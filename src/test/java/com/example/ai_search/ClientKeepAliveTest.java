@@ -0,0 +1,146 @@
+package com.example.ai_search;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientKeepAliveTest {
+
+	private static final Duration WAIT = Duration.ofSeconds(10);
+
+	private final ClientKeepAlive keepAlive = new ClientKeepAlive(Duration.ofMillis(20), Duration.ofMillis(20));
+
+	@AfterEach
+	void close() {
+		keepAlive.close();
+	}
+
+	@Test
+	void fastSearchIsAnsweredWithoutKeepAlives() throws Exception {
+		DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+		TrailerResponse response = new TrailerResponse();
+		ClientKeepAlive.Watch watch = keepAlive.watch(result, response, true, () -> {
+		});
+
+		watch.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("The search operation timed out"));
+		Thread.sleep(100);
+
+		assertFalse(response.isCommitted());
+		assertEquals("", response.getContentAsString());
+		assertEquals("The search operation timed out", ((ResponseEntity<?>) result.getResult()).getBody());
+	}
+
+	@Test
+	void slowSearchSendsStatusAndCursorAsTrailers() throws Exception {
+		DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+		TrailerResponse response = new TrailerResponse();
+		ClientKeepAlive.Watch watch = keepAlive.watch(result, response, true, () -> {
+		});
+
+		awaitTrue(() -> response.getContentAsByteArray().length >= 2, "two keep-alives were written");
+		watch.complete(ResponseEntity.ok().header(SearchController.NEXT_CURSOR_HEADER, "next").body(List.of()));
+
+		assertTrue(response.isCommitted());
+		assertTrue(response.getContentAsString().isBlank());
+		assertEquals(Map.of(ClientKeepAlive.STATUS_TRAILER, "200", SearchController.NEXT_CURSOR_HEADER, "next"),
+				response.trailers.get());
+	}
+
+	@Test
+	void errorAfterKeepAlivesBecomesJson() throws Exception {
+		DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+		TrailerResponse response = new TrailerResponse();
+		ClientKeepAlive.Watch watch = keepAlive.watch(result, response, true, () -> {
+		});
+
+		awaitTrue(response::isCommitted, "a keep-alive was written");
+		watch.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("The search operation timed out"));
+
+		assertEquals(Map.of("error", "The search operation timed out"), ((ResponseEntity<?>) result.getResult()).getBody());
+		assertEquals("504", response.trailers.get().get(ClientKeepAlive.STATUS_TRAILER));
+	}
+
+	@Test
+	void failedKeepAliveReportsDisconnect() throws Exception {
+		DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+		AtomicInteger disconnects = new AtomicInteger();
+		keepAlive.watch(result, new DisconnectedResponse(), true, disconnects::incrementAndGet);
+
+		awaitTrue(result::hasResult, "the request is released");
+		Thread.sleep(100);
+
+		assertEquals(1, disconnects.get());
+		assertEquals(HttpStatus.NO_CONTENT, ((ResponseEntity<?>) result.getResult()).getStatusCode());
+	}
+
+	@Test
+	void forwardedRequestIsNotProbed() throws Exception {
+		DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+		TrailerResponse response = new TrailerResponse();
+		keepAlive.watch(result, response, false, () -> {
+		});
+
+		Thread.sleep(100);
+
+		assertFalse(response.isCommitted());
+		assertFalse(result.hasResult());
+	}
+
+	private static void awaitTrue(BooleanSupplier condition, String description) throws InterruptedException {
+		long deadline = System.nanoTime() + WAIT.toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Timed out waiting until " + description);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static class TrailerResponse extends MockHttpServletResponse {
+		private volatile Supplier<Map<String, String>> trailers = Map::of;
+
+		@Override
+		public void setTrailerFields(Supplier<Map<String, String>> supplier) {
+			trailers = supplier;
+		}
+	}
+
+	// Like a client that closed its connection: every write fails with a broken pipe
+	private static class DisconnectedResponse extends MockHttpServletResponse {
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return new ServletOutputStream() {
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setWriteListener(WriteListener listener) {
+				}
+
+				@Override
+				public void write(int b) throws IOException {
+					throw new IOException("Broken pipe");
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package com.example.ai_search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs real {@link ClusterMembership} instances against each other, each behind a small HTTP server that serves
+ * the {@code /api/cluster} endpoints the way {@code ClusterController} does.
+ */
+class ClusterMembershipTest {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private static final Duration HEARTBEAT_INTERVAL = Duration.ofMillis(50);
+	private static final Duration WAIT = Duration.ofSeconds(10);
+
+	private final List<Node> nodes = new ArrayList<>();
+
+	@AfterEach
+	void stopNodes() {
+		nodes.forEach(Node::stop);
+	}
+
+	@Test
+	void nodesJoiningThroughASeedAgreeOnOwners() throws Exception {
+		Node a = start();
+		Node b = start(a.url);
+
+		awaitTrue(() -> alive(a).equals(List.of(a.url, b.url).stream().sorted().toList()), "a sees both nodes");
+		awaitTrue(() -> alive(b).equals(alive(a)), "b sees both nodes");
+
+		boolean ownedByA = false;
+		boolean ownedByB = false;
+		for (long orgId = 1; orgId <= 100; orgId++) {
+			String owner = a.membership.ownerOf(orgId);
+			assertEquals(owner, b.membership.ownerOf(orgId), "owner of org " + orgId);
+			ownedByA |= owner.equals(a.url);
+			ownedByB |= owner.equals(b.url);
+		}
+		assertTrue(ownedByA && ownedByB, "orgs are spread over both nodes");
+	}
+
+	@Test
+	void heartbeatFromUnknownNodeOnlyMakesItACandidate() throws Exception {
+		Node a = start();
+		// Nothing listens on the discard port, so a's own heartbeats to it fail
+		String unreachable = "http://127.0.0.1:9";
+
+		a.membership.onHeartbeat(unreachable);
+
+		assertEquals(List.of(a.url), alive(a));
+		assertTrue(suspected(a).contains(unreachable));
+		for (long orgId = 1; orgId <= 100; orgId++) {
+			assertEquals(a.url, a.membership.ownerOf(orgId));
+		}
+	}
+
+	@Test
+	void leavingNodeIsRemovedRightAway() throws Exception {
+		Node a = start();
+		Node b = start(a.url);
+		awaitTrue(() -> alive(a).size() == 2 && alive(b).size() == 2, "both nodes see each other");
+
+		b.stop();
+
+		assertEquals(List.of(a.url), alive(a));
+	}
+
+	@Test
+	void leaveNamingThisNodeIsIgnored() throws Exception {
+		Node a = start();
+		Node b = start(a.url);
+		awaitTrue(() -> alive(a).size() == 2, "a sees b");
+
+		a.membership.onLeave(a.url);
+
+		assertEquals(List.of(a.url, b.url).stream().sorted().toList(), alive(a));
+	}
+
+	@Test
+	void leaveForNodeThatStillAnswersIsIgnored() throws Exception {
+		Node a = start();
+		Node b = start(a.url);
+		awaitTrue(() -> alive(a).size() == 2, "a sees b");
+
+		// Anyone can claim b left, but b still answers heartbeats
+		a.membership.onLeave(b.url);
+
+		assertEquals(List.of(a.url, b.url).stream().sorted().toList(), alive(a));
+	}
+
+	@Test
+	void unreachableNodeIsTakenOffTheRing() throws Exception {
+		Node a = start();
+		Node b = start(a.url);
+		awaitTrue(() -> alive(a).size() == 2, "a sees b");
+
+		// b keeps sending heartbeats, which must not keep it on a's ring while a cannot reach it
+		b.kill();
+
+		awaitTrue(() -> alive(a).equals(List.of(a.url)), "a takes b off the ring");
+		assertTrue(suspected(a).contains(b.url));
+		assertEquals(a.url, a.membership.ownerOf(1L));
+	}
+
+	private Node start(String... seeds) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		String url = "http://127.0.0.1:" + server.getAddress().getPort();
+		// Three failures in a row take a node off the ring, like the default
+		ClusterMembership membership = new ClusterMembership(url, List.of(seeds), HEARTBEAT_INTERVAL, 3, 128, new SearchMetrics());
+		server.createContext("/api/cluster/heartbeat", exchange -> {
+			if (membership.leaving()) {
+				respond(exchange, 503, "");
+			} else {
+				respond(exchange, 200, OBJECT_MAPPER.writeValueAsString(membership.onHeartbeat(parameter(exchange, "from"))));
+			}
+		});
+		server.createContext("/api/cluster/leave", exchange -> {
+			membership.onLeave(parameter(exchange, "node"));
+			respond(exchange, 200, "");
+		});
+		server.start();
+		Node node = new Node(url, server, membership);
+		nodes.add(node);
+		return node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> alive(Node node) {
+		return (List<String>) node.membership.view().get("alive");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> suspected(Node node) {
+		return (List<String>) node.membership.view().get("suspected");
+	}
+
+	private static String parameter(HttpExchange exchange, String name) {
+		String query = exchange.getRequestURI().getRawQuery();
+		for (String pair : query == null ? new String[0] : query.split("&")) {
+			String[] parts = pair.split("=", 2);
+			if (parts[0].equals(name) && parts.length == 2) {
+				return URLDecoder.decode(parts[1], StandardCharsets.UTF_8);
+			}
+		}
+		return null;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	private static void awaitTrue(BooleanSupplier condition, String description) throws InterruptedException {
+		long deadline = System.nanoTime() + WAIT.toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Timed out waiting until " + description);
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	private static final class Node {
+		private final String url;
+		private final HttpServer server;
+		private final ClusterMembership membership;
+		private boolean serving = true;
+		private boolean stopped;
+
+		private Node(String url, HttpServer server, ClusterMembership membership) {
+			this.url = url;
+			this.server = server;
+			this.membership = membership;
+		}
+
+		// Stops answering without telling anyone, like a node that hangs or is cut off
+		private void kill() {
+			serving = false;
+			server.stop(0);
+		}
+
+		// Leaves like a node shutting down: tells the others first, then stops serving
+		private void stop() {
+			if (!stopped) {
+				stopped = true;
+				membership.close();
+				if (serving) {
+					kill();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarSnapshotTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsBackWhatWasWritten() throws Exception {
+		Path path = directory.resolve("snapshot.bin");
+		ColumnarSnapshotWriter.write(path, UserRepository.sampleUsers, TeamRepository.Teams, ProjectRepository.projects,
+				MentionHistoryRepository.mentionHistory);
+
+		ColumnarSnapshot snapshot = ColumnarSnapshot.open(path);
+
+		assertEquals(UserRepository.sampleUsers, snapshot.users());
+		assertEquals(UserRepository.sampleUsers.size(), snapshot.userCount());
+		assertEquals(new User(7, "David Lee", "david.lee@globalcorp.com", 3, 20), snapshot.getUser(7));
+		assertNull(snapshot.getUser(999));
+		assertEquals(TeamRepository.Teams, snapshot.teams());
+		assertEquals(ProjectRepository.projects, snapshot.projects());
+		assertEquals(MentionHistoryRepository.mentionHistory.size(), snapshot.mentions().size());
+		assertTrue(snapshot.mentions().containsAll(MentionHistoryRepository.mentionHistory));
+		for (MentionHistory mention : MentionHistoryRepository.mentionHistory) {
+			assertTrue(snapshot.mentionsByUser(mention.userId()).contains(mention));
+		}
+		assertEquals(ColumnarSnapshotWriter.usersChecksum(UserRepository.sampleUsers), snapshot.usersChecksum());
+	}
+
+	@Test
+	void readsEmptySnapshot() throws Exception {
+		Path path = directory.resolve("empty.bin");
+		ColumnarSnapshotWriter.write(path, List.of(), Map.of(), Map.of(), List.of());
+
+		ColumnarSnapshot snapshot = ColumnarSnapshot.open(path);
+
+		assertEquals(0, snapshot.userCount());
+		assertEquals(List.of(), snapshot.users());
+		assertNull(snapshot.getUser(1));
+		assertEquals(Map.of(), snapshot.teams());
+		assertEquals(Map.of(), snapshot.projects());
+		assertEquals(List.of(), snapshot.mentions());
+		assertEquals(List.of(), snapshot.mentionsByUser(1));
+	}
+
+	@Test
+	void sharesDuplicateStrings() throws Exception {
+		// Same name twice, a team and a project both called "Atlas", a name equal to a team name
+		List<User> users = List.of(
+				new User(2, "Alex Kim", "alex@example.com", 1, 10),
+				new User(1, "Alex Kim", "alex.kim@example.com", 1, 10),
+				new User(3, "Atlas", "atlas@example.com", 2, 10));
+		Map<Long, String> teams = Map.of(1L, "Atlas", 2L, "Zürich");
+		Map<String, List<Long>> projects = Map.of("Atlas", List.of(1L, 3L), "Empty", List.of());
+		Path path = directory.resolve("duplicates.bin");
+		ColumnarSnapshotWriter.write(path, users, teams, projects, List.of());
+
+		ColumnarSnapshot snapshot = ColumnarSnapshot.open(path);
+
+		assertEquals(List.of(1L, 2L, 3L), snapshot.users().stream().map(User::userId).toList());
+		assertEquals("Alex Kim", snapshot.getUser(1).name());
+		assertEquals("Alex Kim", snapshot.getUser(2).name());
+		assertEquals("alex.kim@example.com", snapshot.getUser(1).email());
+		assertEquals("Atlas", snapshot.getUser(3).name());
+		assertEquals(teams, snapshot.teams());
+		assertEquals(projects, snapshot.projects());
+		assertEquals(List.of(), snapshot.mentions());
+	}
+
+	@Test
+	void returnsNoMentionsForUsersWithoutAny() throws Exception {
+		LocalDate day = LocalDate.of(2024, 5, 1);
+		List<MentionHistory> mentions = List.of(
+				new MentionHistory(5, 1, day),
+				new MentionHistory(3, 2, day),
+				new MentionHistory(3, 1, day.plusDays(1)));
+		Path path = directory.resolve("mentions.bin");
+		ColumnarSnapshotWriter.write(path, UserRepository.sampleUsers, Map.of(), Map.of(), mentions);
+
+		ColumnarSnapshot snapshot = ColumnarSnapshot.open(path);
+
+		assertEquals(2, snapshot.mentionsByUser(3).size());
+		assertEquals(List.of(new MentionHistory(5, 1, day)), snapshot.mentionsByUser(5));
+		// Before the first, between and after the last mentioning user
+		assertEquals(List.of(), snapshot.mentionsByUser(1));
+		assertEquals(List.of(), snapshot.mentionsByUser(4));
+		assertEquals(List.of(), snapshot.mentionsByUser(6));
+		assertEquals(List.of(), snapshot.mentionsByUser(Long.MAX_VALUE));
+	}
+
+	@Test
+	void rejectsDuplicateUserIds() {
+		List<User> users = List.of(new User(1, "A", "a@example.com", 1, 10), new User(1, "B", "b@example.com", 1, 10));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> ColumnarSnapshotWriter.write(directory.resolve("invalid.bin"), users, Map.of(), Map.of(), List.of()));
+	}
+
+	@Test
+	void checksumDependsOnContentNotOrder() {
+		List<User> users = UserRepository.sampleUsers;
+		List<User> reversed = new ArrayList<>(users);
+		Collections.reverse(reversed);
+		List<User> renamed = users.stream()
+				.map(user -> user.userId() == 7 ? new User(7, "David Li", user.email(), user.teamId(), user.orgId()) : user)
+				.toList();
+
+		assertEquals(ColumnarSnapshotWriter.usersChecksum(users), ColumnarSnapshotWriter.usersChecksum(reversed));
+		assertNotEquals(ColumnarSnapshotWriter.usersChecksum(users), ColumnarSnapshotWriter.usersChecksum(renamed));
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+	private static final int VIRTUAL_NODES = 128;
+	private static final int KEYS = 10_000;
+
+	private static final String A = "http://search-a:8080";
+	private static final String B = "http://search-b:8080";
+	private static final String C = "http://search-c:8080";
+	private static final String D = "http://search-d:8080";
+
+	@Test
+	void hasNoOwnerWithoutNodes() {
+		assertNull(new ConsistentHashRing(List.of(), VIRTUAL_NODES).owner(42));
+	}
+
+	@Test
+	void ownsEveryKeyWithOneNode() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of(A), VIRTUAL_NODES);
+		for (long key = 0; key < KEYS; key++) {
+			assertEquals(A, ring.owner(key));
+		}
+	}
+
+	@Test
+	void ownerDoesNotDependOnNodeOrder() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of(A, B, C), VIRTUAL_NODES);
+		ConsistentHashRing shuffled = new ConsistentHashRing(List.of(C, A, B), VIRTUAL_NODES);
+
+		assertEquals(List.of(A, B, C), shuffled.nodes());
+		for (long key = 0; key < KEYS; key++) {
+			assertEquals(ring.owner(key), shuffled.owner(key));
+		}
+	}
+
+	@Test
+	void spreadsKeysOverNodes() {
+		Map<String, Integer> owned = owners(new ConsistentHashRing(List.of(A, B, C), VIRTUAL_NODES));
+
+		for (String node : List.of(A, B, C)) {
+			double share = owned.getOrDefault(node, 0) / (double) KEYS;
+			assertTrue(share > 0.2 && share < 0.47, node + " owns " + share);
+		}
+	}
+
+	@Test
+	void joiningNodeOnlyTakesKeys() {
+		ConsistentHashRing before = new ConsistentHashRing(List.of(A, B, C), VIRTUAL_NODES);
+		ConsistentHashRing after = new ConsistentHashRing(List.of(A, B, C, D), VIRTUAL_NODES);
+
+		int moved = 0;
+		for (long key = 0; key < KEYS; key++) {
+			if (!before.owner(key).equals(after.owner(key))) {
+				assertEquals(D, after.owner(key), "key " + key + " moved between existing nodes");
+				moved++;
+			}
+		}
+		// About a quarter of the keys move to the new node, the rest stay where they were
+		assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, moved + " keys moved");
+	}
+
+	@Test
+	void leavingNodeOnlyGivesUpItsKeys() {
+		ConsistentHashRing before = new ConsistentHashRing(List.of(A, B, C), VIRTUAL_NODES);
+		ConsistentHashRing after = new ConsistentHashRing(List.of(A, C), VIRTUAL_NODES);
+
+		for (long key = 0; key < KEYS; key++) {
+			if (!before.owner(key).equals(B)) {
+				assertEquals(before.owner(key), after.owner(key), "key " + key + " moved away from a remaining node");
+			}
+		}
+	}
+
+	private static Map<String, Integer> owners(ConsistentHashRing ring) {
+		Map<String, Integer> owned = new HashMap<>();
+		for (long key = 0; key < KEYS; key++) {
+			owned.merge(ring.owner(key), 1, Integer::sum);
+		}
+		return owned;
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JsonRepairTest {
+
+	static Stream<Arguments> repairs() {
+		return Stream.of(
+				Arguments.of("valid json", "[{\"userId\": 1}]", "[{\"userId\": 1}]"),
+				Arguments.of("markdown fence", "```json\n[{\"userId\": 1}]\n```", "[{\"userId\": 1}]"),
+				Arguments.of("bare fence", "```\n{\"items\": []}\n```", "{\"items\": []}"),
+				Arguments.of("prose around json", "Here are the users: {\"items\": []} Hope this helps!", "{\"items\": []}"),
+				Arguments.of("typographic quotes", "{“name”: “John Doe”}", "{\"name\": \"John Doe\"}"),
+				Arguments.of("trailing commas", "[{\"userId\": 1,}, {\"userId\": 2},]", "[{\"userId\": 1}, {\"userId\": 2}]"),
+				Arguments.of("cut off inside a string", "{\"items\": [{\"name\": \"Jo", "{\"items\": [{\"name\": \"Jo\"}]}"),
+				Arguments.of("cut off after a separator", "[{\"userId\": 1}, ", "[{\"userId\": 1}]"),
+				Arguments.of("brackets inside strings", "{\"name\": \"a]b}\"} and more", "{\"name\": \"a]b}\"}"),
+				Arguments.of("escaped quotes", "{\"name\": \"say \\\"hi\\\"\"}", "{\"name\": \"say \\\"hi\\\"\"}"),
+				Arguments.of("no user found", "No user found.", "[]"),
+				Arguments.of("no json", "I could not find anything.", null),
+				Arguments.of("empty text", "", null),
+				Arguments.of("null text", null, null));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("repairs")
+	void repairsModelOutput(String description, String text, String expected) {
+		assertEquals(expected, JsonRepair.repair(text));
+	}
+
+	static Stream<Arguments> conversions() {
+		return Stream.of(
+				Arguments.of("wrapped array", "{\"items\": [{\"userId\": 1, \"name\": \"John Doe\"}]}", List.of(1L), false),
+				Arguments.of("markdown fence", "```json\n[{\"userId\": 2}]\n```", List.of(2L), false),
+				Arguments.of("single object", "{\"userId\": 3, \"name\": \"Robert Brown\"}", List.of(3L), true),
+				Arguments.of("cut off answer", "{\"items\": [{\"userId\": 4}, {\"userId\": 5, \"name\": \"Al", List.of(4L, 5L), true),
+				Arguments.of("no user found", "No user found.", List.of(), true),
+				Arguments.of("message object", "{\"response\": \"No user found\", \"count\": 0}", List.of(), true));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("conversions")
+	void convertsWithRepair(String description, String text, List<Long> expectedUserIds, boolean expectedRepaired) {
+		GenericListOutputConverter.Conversion<User> conversion = new GenericListOutputConverter<>(User.class).convertWithRepair(text);
+
+		assertEquals(expectedUserIds, conversion.values().stream().map(User::userId).toList());
+		assertEquals(expectedRepaired, conversion.repaired());
+	}
+
+	static Stream<Arguments> unrepairable() {
+		return Stream.of(
+				Arguments.of("null text", null),
+				Arguments.of("prose only", "Sorry, I cannot help with that."),
+				Arguments.of("scalar", "42"));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("unrepairable")
+	void givesUpOnUnrepairableOutput(String description, String text) {
+		assertNull(new GenericListOutputConverter<>(User.class).convertWithRepair(text));
+	}
+}
@@ -0,0 +1,30 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LuceneUserDirectoryTest extends AbstractUserDirectoryTest {
+
+	@TempDir
+	Path indexPath;
+
+	@Override
+	protected UserDirectory createDirectory() throws Exception {
+		return new LuceneUserDirectory(indexPath);
+	}
+
+	@Test
+	void keepsVersionAcrossRestarts(@TempDir Path otherIndexPath) throws Exception {
+		try (UserDirectory directory = new LuceneUserDirectory(otherIndexPath)) {
+			directory.replaceAll(UserRepository.sampleUsers, "v1");
+		}
+		try (UserDirectory directory = new LuceneUserDirectory(otherIndexPath)) {
+			assertEquals("v1", directory.indexedVersion());
+			assertEquals(UserRepository.sampleUsers.size(), directory.count());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelCascadeTest {
+
+	private final SearchMetrics metrics = new SearchMetrics();
+	private final ModelCascade cascade = new ModelCascade(new String[]{"small", "large"}, metrics);
+	private final List<String> tried = new ArrayList<>();
+
+	@AfterEach
+	void clearInterrupt() {
+		Thread.interrupted();
+	}
+
+	@Test
+	void stopsAtFirstAcceptedAnswer() {
+		String answer = cascade.run(model -> {
+			tried.add(model);
+			return "ok";
+		}, result -> null, result -> result);
+
+		assertEquals("ok", answer);
+		assertEquals(List.of("small"), tried);
+		assertEquals(1, metrics.count("cascade.small.accepted"));
+		assertEquals(0, metrics.count("cascade.large.attempts"));
+	}
+
+	@Test
+	void escalatesOnModelError() {
+		String answer = cascade.run(model -> {
+			tried.add(model);
+			if (model.equals("small")) {
+				throw new IllegalStateException("model not loaded");
+			}
+			return "ok";
+		}, result -> null, result -> result);
+
+		assertEquals("ok", answer);
+		assertEquals(List.of("small", "large"), tried);
+		assertEquals(1, metrics.count("cascade.small.errors"));
+	}
+
+	@Test
+	void sanitizesRejectedAnswerOfLastModel() {
+		String answer = cascade.run(model -> "bad answer", result -> "invalid", result -> "sanitized");
+
+		assertEquals("sanitized", answer);
+		assertEquals(1, metrics.count("cascade.small.rejected"));
+		assertEquals(1, metrics.count("cascade.large.sanitized"));
+	}
+
+	@Test
+	void doesNotEscalateWhenInterrupted() {
+		assertThrows(CancellationException.class, () -> cascade.run(model -> {
+			tried.add(model);
+			// What a blocking HTTP client does when the search thread is cancelled
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("I/O error", new InterruptedException());
+		}, result -> null, result -> result));
+
+		assertEquals(List.of("small"), tried);
+		assertEquals(1, metrics.count("cascade.small.cancelled"));
+		assertEquals(0, metrics.count("cascade.small.errors"));
+		assertEquals(0, metrics.count("cascade.large.attempts"));
+	}
+
+	@Test
+	void doesNotEscalateOnInterruptedCause() {
+		assertThrows(CancellationException.class, () -> cascade.run(model -> {
+			tried.add(model);
+			throw new RuntimeException("I/O error", new InterruptedException());
+		}, result -> null, result -> result));
+
+		assertEquals(List.of("small"), tried);
+		assertEquals(0, metrics.count("cascade.small.errors"));
+	}
+
+	@Test
+	void doesNotStartWhenAlreadyCancelled() {
+		Thread.currentThread().interrupt();
+
+		assertThrows(CancellationException.class, () -> cascade.run(model -> {
+			tried.add(model);
+			return "ok";
+		}, result -> null, result -> result));
+
+		assertEquals(List.of(), tried);
+	}
+}
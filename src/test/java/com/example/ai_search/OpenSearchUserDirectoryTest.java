@@ -0,0 +1,32 @@
+package com.example.ai_search;
+
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Runs against the same OpenSearch image as {@code Docker-Script/docker-compose-opensearch.yml}; skipped without Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class OpenSearchUserDirectoryTest extends AbstractUserDirectoryTest {
+
+	@Container
+	static final GenericContainer<?> OPENSEARCH = new GenericContainer<>("opensearchproject/opensearch:2.11.1")
+			.withEnv("discovery.type", "single-node")
+			.withEnv("DISABLE_SECURITY_PLUGIN", "true")
+			.withEnv("OPENSEARCH_JAVA_OPTS", "-Xms512m -Xmx512m")
+			.withExposedPorts(9200)
+			.waitingFor(Wait.forHttp("/_cluster/health").forPort(9200).forStatusCode(200))
+			.withStartupTimeout(Duration.ofMinutes(3));
+
+	@Override
+	protected UserDirectory createDirectory() {
+		String url = "http://" + OPENSEARCH.getHost() + ":" + OPENSEARCH.getMappedPort(9200);
+		// A fresh index per test keeps the tests independent
+		return new OpenSearchUserDirectory(url, "users-" + UUID.randomUUID());
+	}
+}
@@ -0,0 +1,137 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.ai_search.RelationshipGraph.EdgeType.MEMBER_OF_TEAM;
+import static com.example.ai_search.RelationshipGraph.EdgeType.MENTIONED_BY;
+import static com.example.ai_search.RelationshipGraph.EdgeType.MENTIONS;
+import static com.example.ai_search.RelationshipGraph.EdgeType.PROJECT_MEMBER;
+import static com.example.ai_search.RelationshipGraph.EdgeType.TEAM_MEMBER;
+import static com.example.ai_search.RelationshipGraph.EdgeType.WORKS_ON;
+import static com.example.ai_search.RelationshipGraph.NodeType.PROJECT;
+import static com.example.ai_search.RelationshipGraph.NodeType.TEAM;
+import static com.example.ai_search.RelationshipGraph.NodeType.USER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RelationshipGraphTest {
+
+	private static final int LIMIT = 100;
+	private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+	// Users 1 to 3 are in org 10, users 4 and 5 in org 20; mentions run 1 -> 2 -> 3 -> 1 and on from 3 to 4 to 5
+	private static final List<User> USERS = List.of(
+			new User(1, "Ann", "ann@example.com", 1, 10),
+			new User(2, "Ben", "ben@example.com", 1, 10),
+			new User(3, "Cal", "cal@example.com", 2, 10),
+			new User(4, "Dee", "dee@example.com", 2, 20),
+			new User(5, "Eve", "eve@example.com", 1, 20));
+	private static final Map<Long, String> TEAMS = Map.of(1L, "Alpha", 2L, "Beta");
+	private static final Map<String, List<Long>> PROJECTS = Map.of(
+			"Mars", List.of(1L, 3L),
+			"Atlas", List.of(2L, 4L),
+			"Zeus", List.of(2L));
+	private static final List<MentionHistory> MENTIONS_HISTORY = List.of(
+			new MentionHistory(1, 2, DAY),
+			new MentionHistory(2, 3, DAY),
+			new MentionHistory(3, 1, DAY),
+			new MentionHistory(3, 4, DAY),
+			new MentionHistory(4, 5, DAY));
+
+	@TempDir
+	Path directory;
+
+	private UserDirectory userDirectory;
+	private RelationshipGraph graph;
+
+	@BeforeEach
+	void buildGraph() throws Exception {
+		Path path = directory.resolve("snapshot.bin");
+		ColumnarSnapshotWriter.write(path, USERS, TEAMS, PROJECTS, MENTIONS_HISTORY);
+		ObjectProvider<ColumnarSnapshot> snapshot = new StaticListableBeanFactory(Map.of("snapshot", ColumnarSnapshot.open(path)))
+				.getBeanProvider(ColumnarSnapshot.class);
+		userDirectory = new LuceneUserDirectory(directory.resolve("index"));
+		UserRepository userRepository = new UserRepository(userDirectory, snapshot);
+		graph = new RelationshipGraph(userRepository, new TeamRepository(userRepository, snapshot),
+				new ProjectRepository(userRepository, snapshot), new MentionHistoryRepository(userRepository, snapshot), snapshot);
+	}
+
+	@AfterEach
+	void closeDirectory() throws Exception {
+		userDirectory.close();
+	}
+
+	@Test
+	void buildsCompressedSparseRows() {
+		RelationshipGraph.EdgeList edges = new RelationshipGraph.EdgeList();
+		edges.add(0, 2);
+		edges.add(1, 2);
+		edges.add(0, 1);
+
+		RelationshipGraph.Csr forward = edges.toCsr(3, false);
+		RelationshipGraph.Csr reversed = edges.toCsr(3, true);
+
+		assertArrayEquals(new int[]{0, 2, 3, 3}, forward.offsets());
+		assertArrayEquals(new int[]{2, 1, 2}, forward.targets());
+		assertArrayEquals(new int[]{0, 0, 1, 3}, reversed.offsets());
+		assertArrayEquals(new int[]{0, 0, 1}, reversed.targets());
+	}
+
+	@Test
+	void followsEachEdgeType() {
+		assertEquals(List.of("Alpha"), graph.traverse(USER, "1", List.of(MEMBER_OF_TEAM), 1, LIMIT, null).teams());
+		assertEquals(List.of(1L, 2L, 5L), userIds(graph.traverse(TEAM, "alpha", List.of(TEAM_MEMBER), 1, LIMIT, null)));
+		assertEquals(List.of("Atlas", "Zeus"), graph.traverse(USER, "2", List.of(WORKS_ON), 1, LIMIT, null).projects());
+		assertEquals(List.of(1L, 3L), userIds(graph.traverse(PROJECT, "Mars", List.of(PROJECT_MEMBER), 1, LIMIT, null)));
+		assertEquals(List.of(2L), userIds(graph.traverse(USER, "1", List.of(MENTIONS), 1, LIMIT, null)));
+		assertEquals(List.of(3L), userIds(graph.traverse(USER, "1", List.of(MENTIONED_BY), 1, LIMIT, null)));
+	}
+
+	@Test
+	void repeatedStepReturnsEveryNodeOnTheWayExceptTheStart() {
+		// The cycle leads back to user 1, which is neither returned nor expanded again
+		assertEquals(List.of(2L, 3L, 4L, 5L), userIds(graph.traverse(USER, "1", List.of(MENTIONS), 10, LIMIT, null)));
+		assertEquals(List.of(2L, 3L), userIds(graph.traverse(USER, "1", List.of(MENTIONS), 2, LIMIT, null)));
+	}
+
+	@Test
+	void multiStepPathReturnsOnlyTheLastStep() {
+		// Teammates of user 1, without user 1 who is reached again through the team
+		assertEquals(List.of(2L, 5L), userIds(graph.traverse(USER, "1", List.of(MEMBER_OF_TEAM, TEAM_MEMBER), 5, LIMIT, null)));
+		// People on projects with those user 1 mentioned: user 2 itself and user 4 on Atlas
+		assertEquals(List.of(2L, 4L), userIds(graph.traverse(USER, "1", List.of(MENTIONS, WORKS_ON, PROJECT_MEMBER), 3, LIMIT, null)));
+		// Cut to one step, only the mentioned user is reached
+		assertEquals(List.of(2L), userIds(graph.traverse(USER, "1", List.of(MENTIONS, WORKS_ON), 1, LIMIT, null)));
+	}
+
+	@Test
+	void returnsOnlyUsersOfTheOrgUpToTheLimit() {
+		assertEquals(List.of(2L, 3L), userIds(graph.traverse(USER, "1", List.of(MENTIONS), 10, LIMIT, 10L)));
+		assertEquals(List.of(4L, 5L), userIds(graph.traverse(USER, "1", List.of(MENTIONS), 10, LIMIT, 20L)));
+		assertEquals(List.of(2L), userIds(graph.traverse(USER, "1", List.of(MENTIONS), 10, 1, null)));
+		assertEquals(List.of("Atlas"), graph.traverse(USER, "2", List.of(WORKS_ON), 1, 1, null).projects());
+	}
+
+	@Test
+	void returnsNothingForUnknownStart() {
+		RelationshipGraph.TraversalResult empty = new RelationshipGraph.TraversalResult(List.of(), List.of(), List.of());
+
+		assertEquals(empty, graph.traverse(USER, "99", List.of(MENTIONS), 1, LIMIT, null));
+		assertEquals(empty, graph.traverse(USER, "not a number", List.of(MENTIONS), 1, LIMIT, null));
+		assertEquals(empty, graph.traverse(TEAM, "Gamma", List.of(TEAM_MEMBER), 1, LIMIT, null));
+	}
+
+	private static List<Long> userIds(RelationshipGraph.TraversalResult result) {
+		return result.users().stream().map(User::userId).toList();
+	}
+}
@@ -0,0 +1,144 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequesterContextProviderTest {
+
+	private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+	// Ann and Ben are in org 10, Dee and Eve in org 20; Ann mentioned Ben, then Dee, then someone unknown
+	private static final List<User> USERS = List.of(
+			new User(1, "Ann", "ann@example.com", 1, 10),
+			new User(2, "Ben", "ben@example.com", 1, 10),
+			new User(3, "Cal", "cal@example.com", 2, 10),
+			new User(4, "Dee", "dee@example.com", 2, 20),
+			new User(5, "Eve", "eve@example.com", 1, 20));
+	private static final Map<Long, String> TEAMS = Map.of(1L, "Alpha", 2L, "Beta");
+	private static final Map<String, List<Long>> PROJECTS = Map.of("Mars", List.of(1L, 3L), "Atlas", List.of(2L, 4L));
+	private static final List<MentionHistory> MENTIONS = List.of(
+			new MentionHistory(1, 2, DAY),
+			new MentionHistory(1, 4, DAY.plusDays(1)),
+			new MentionHistory(1, 99, DAY.plusDays(2)));
+
+	@TempDir
+	Path directory;
+
+	private UserDirectory userDirectory;
+	private UserRepository userRepository;
+	private TeamRepository teamRepository;
+	private MentionHistoryRepository mentionHistoryRepository;
+	private RelationshipGraph relationshipGraph;
+	private ThreadPoolExecutor executor;
+	private SearchMetrics metrics;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Path path = directory.resolve("snapshot.bin");
+		ColumnarSnapshotWriter.write(path, USERS, TEAMS, PROJECTS, MENTIONS);
+		ObjectProvider<ColumnarSnapshot> snapshot = new StaticListableBeanFactory(Map.of("snapshot", ColumnarSnapshot.open(path)))
+				.getBeanProvider(ColumnarSnapshot.class);
+		userDirectory = new LuceneUserDirectory(directory.resolve("index"));
+		userRepository = new UserRepository(userDirectory, snapshot);
+		teamRepository = new TeamRepository(userRepository, snapshot);
+		mentionHistoryRepository = new MentionHistoryRepository(userRepository, snapshot);
+		ProjectRepository projectRepository = new ProjectRepository(userRepository, snapshot);
+		relationshipGraph = new RelationshipGraph(userRepository, teamRepository, projectRepository, mentionHistoryRepository, snapshot);
+		executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		metrics = new SearchMetrics();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdownNow();
+		userDirectory.close();
+	}
+
+	@Test
+	void rendersProfileTeamProjectsAndMentionsOfTheOrg() {
+		String block = provider(Duration.ofMinutes(1)).contextBlock(10L, null, 1L);
+
+		assertEquals("""
+				Requester: Ann (userId 1), email ann@example.com, teamId 1, orgId 10
+				Team: Alpha (teamId 1), 2 members: Ann (userId 1), Ben (userId 2)
+				Projects: Mars
+				Recently mentioned: Ben (userId 2) on 2024-05-01""", block);
+	}
+
+	@Test
+	void showsEveryMentionWithoutAnOrg() {
+		String block = provider(Duration.ofMinutes(1)).contextBlock(null, null, 1L);
+
+		assertTrue(block.contains("Recently mentioned: userId 99 on 2024-05-03, Dee (userId 4) on 2024-05-02, Ben (userId 2) on 2024-05-01"), block);
+	}
+
+	@Test
+	void prefetchesLookupsInParallel() {
+		String block = provider(Duration.ofMinutes(1)).contextBlock(10L, null, 1L);
+
+		// Profile, projects and mentions start together; the roster follows the profile, which names the team
+		assertEquals(4, executor.getTaskCount());
+		assertTrue(block.contains("Team: Alpha (teamId 1)"), block);
+	}
+
+	@Test
+	void givenTeamIsLookedUpWithoutWaitingForTheProfile() {
+		String block = provider(Duration.ofMinutes(1)).contextBlock(10L, 2L, null);
+
+		assertEquals("Team: Beta (teamId 2), 1 members: Cal (userId 3)", block);
+		assertEquals(1, executor.getTaskCount());
+	}
+
+	@Test
+	void reusesRenderedBlockUntilItExpires() {
+		RequesterContextProvider provider = provider(Duration.ofMinutes(1));
+
+		String first = provider.contextBlock(10L, null, 1L);
+		long tasks = executor.getTaskCount();
+		String second = provider.contextBlock(10L, null, 1L);
+		provider.contextBlock(20L, null, 1L);
+
+		assertEquals(first, second);
+		assertEquals(1, metrics.count("requester-context.hits"));
+		assertEquals(2, metrics.count("requester-context.misses"));
+		assertEquals(tasks * 2, executor.getTaskCount());
+	}
+
+	@Test
+	void rendersAgainOnceExpired() {
+		RequesterContextProvider provider = provider(Duration.ZERO);
+
+		provider.contextBlock(10L, null, 1L);
+		provider.contextBlock(10L, null, 1L);
+
+		assertEquals(0, metrics.count("requester-context.hits"));
+		assertEquals(2, metrics.count("requester-context.misses"));
+	}
+
+	@Test
+	void unknownRequesterNeedsNoLookups() {
+		assertEquals("The requester is unknown.", provider(Duration.ofMinutes(1)).contextBlock(10L, null, null));
+		assertEquals(0, executor.getTaskCount());
+	}
+
+	private RequesterContextProvider provider(Duration ttl) {
+		return new RequesterContextProvider(userRepository, teamRepository, mentionHistoryRepository, relationshipGraph,
+				executor, metrics, ttl);
+	}
+}
@@ -0,0 +1,64 @@
+package com.example.ai_search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResultSnapshotStoreTest {
+
+	private static final User JOHN = new User(1, "John Doe", "john@techhub.com", 1, 10);
+	private static final User JANE = new User(2, "Jane Smith", "jane.s@techhub.com", 1, 10);
+	private static final User ROBERT = new User(3, "Robert Brown", "robert.brown@techhub.com", 1, 10);
+	private static final User EMILY = new User(4, "Emily Davis", "emily.davis@techhub.com", 1, 10);
+
+	private final ResultSnapshotStore store = new ResultSnapshotStore(Duration.ofMinutes(10), 100);
+
+	@Test
+	void emptyAnswerIsNotToppedUp() {
+		ResultSnapshotStore.Page page = store.firstPage(List.of(), List.of(JOHN, JANE), 2, 10L);
+
+		assertEquals(List.of(), page.users());
+		assertNull(page.nextCursor());
+	}
+
+	@Test
+	void shortAnswerIsTheWholeResult() {
+		ResultSnapshotStore.Page page = store.firstPage(List.of(JANE), List.of(JOHN, ROBERT), 2, 10L);
+
+		assertEquals(List.of(JANE), page.users());
+		assertNull(page.nextCursor());
+	}
+
+	@Test
+	void fullAnswerIsFollowedByTheRemainder() {
+		ResultSnapshotStore.Page first = store.firstPage(List.of(JANE, JOHN), List.of(ROBERT, EMILY), 2, 10L);
+		assertEquals(List.of(JANE, JOHN), first.users());
+
+		ResultSnapshotStore.Page second = store.page(first.nextCursor(), 1, 10L);
+		assertEquals(List.of(ROBERT), second.users());
+		ResultSnapshotStore.Page third = store.page(second.nextCursor(), 1, 10L);
+		assertEquals(List.of(EMILY), third.users());
+		assertNull(third.nextCursor());
+	}
+
+	@Test
+	void answerLongerThanLimitContinuesOnTheNextPage() {
+		ResultSnapshotStore.Page first = store.firstPage(List.of(JANE, JOHN, ROBERT), List.of(EMILY), 2, 10L);
+		assertEquals(List.of(JANE, JOHN), first.users());
+
+		assertEquals(List.of(ROBERT, EMILY), store.page(first.nextCursor(), 2, 10L).users());
+	}
+
+	@Test
+	void cursorRequiresTheSameOrg() {
+		String cursor = store.firstPage(List.of(JANE), List.of(JOHN), 1, 10L).nextCursor();
+
+		assertNull(store.page(cursor, 1, 20L));
+		assertNull(store.page(cursor, 1, null));
+		assertEquals(List.of(JOHN), store.page(cursor, 1, 10L).users());
+	}
+}
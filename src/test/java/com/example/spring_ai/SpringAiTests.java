@@ -1,12 +1,16 @@
 package com.example.spring_ai;
 
+import com.example.ai_search.BoundedChatMemory;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
@@ -26,8 +30,11 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.util.MimeTypeUtils;
 
+import java.time.Duration;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
@@ -215,6 +222,35 @@ public class SpringAiTests {
 		logger.info("\n\n>> Response 2: {} \n\n", response);
 	}
 
+	@Test
+	void boundedConversationMemory() {
+
+		try (var chatMemory = new BoundedChatMemory(200, 10_000, Duration.ofMinutes(5),
+				BoundedChatMemory.ConversationSummarizer.extractive(), null)) {
+
+			var chatClient = ChatClient.builder(chatModel)
+					.defaultAdvisors(new PromptChatMemoryAdvisor(chatMemory))
+					.build();
+
+			for (String text : List.of("My name is John", "I work on project Mars", "Tell me a joke about Mars",
+					"Please tell me, what is my name and project?")) {
+				var response = chatClient.prompt()
+						.user(text)
+						.call()
+						.content();
+
+				logger.info("\n\n>> {}: {} (memory tokens: {}) \n\n", text, response, chatMemory.getTotalTokens());
+			}
+			// Compaction always keeps the two latest messages, however long the model's answers are, and folds
+			// everything older into one summary; only then may the conversation stay over its budget
+			List<Message> retained = chatMemory.get(AbstractChatMemoryAdvisor.DEFAULT_CHAT_MEMORY_CONVERSATION_ID, Integer.MAX_VALUE);
+			if (chatMemory.getTotalTokens() > 200) {
+				assertEquals(3, retained.size(), "Conversation over its token budget kept more than the summary and two messages");
+				assertInstanceOf(SystemMessage.class, retained.get(0));
+			}
+		}
+	}
+
 	/////////////////////
 	// Multi-modality
 	/////////////////////